@@ -0,0 +1,343 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Keeps track of how far every log file has been acknowledged by the Relp targets. When persisted, the offsets are
+ * committed to the statestore as a group on a timer, not per record, and right away when a new file shows up. The file
+ * reader keeps its own offsets which run ahead of the acknowledged ones, so on startup everything after the
+ * acknowledged offset is sent again before the reader resumes. Without persistence the offsets are only used for the
+ * lag metrics.
+ * Must be thread-safe
+ */
+public class AckCheckpointer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AckCheckpointer.class);
+    private static final int VERSION = 1;
+    private static final int PRUNE_INTERVAL = 60; // Seconds between forgetting vanished files when not persisted
+    private final Path checkpointPath;
+    private final boolean persist;
+    private final ConcurrentHashMap<String, FileCheckpoint> checkpoints = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService commitExecutor;
+    private volatile List<Entry> stored; // Committed checkpoints of the previous run, kept until replayed
+    private final AtomicBoolean commitRequested = new AtomicBoolean();
+
+    /* Receives replayed records, K8SConsumer::accept */
+    interface RecordConsumer {
+        void accept(String path, String filename, byte[] record, long startOffset, long endOffset);
+    }
+
+    /* Persisted form of a FileCheckpoint */
+    private static final class Entry {
+        private String path;
+        private String filename;
+        private String fileKey;
+        private long acknowledged;
+        private long read;
+    }
+
+    /* Persisted form of all checkpoints */
+    private static final class Checkpoints {
+        private int version;
+        private long created;
+        private List<Entry> files;
+    }
+
+    AckCheckpointer(Path statesStore, boolean persist, int interval, MetricRegistry metricRegistry) {
+        this.checkpointPath = statesStore.resolve("ack-checkpoints.json");
+        this.persist = persist;
+        this.stored = persist ? read(checkpointPath) : new ArrayList<>();
+        metricRegistry.register(
+                name("k8s01", "checkpoint", "unacknowledged"),
+                (Gauge<Long>) () -> checkpoints.values().stream().mapToLong(checkpoint -> checkpoint.getReadOffset() - checkpoint.getAcknowledgedOffset()).sum()
+        );
+        commitExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AckCheckpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The configured interval is only validated with checkpointing enabled, lag metrics alone just prune vanished files
+        int delay = persist ? interval : PRUNE_INTERVAL;
+        commitExecutor.scheduleWithFixedDelay(this::commit, delay, delay, TimeUnit.SECONDS);
+    }
+
+    /**
+     * First record read from a file decides where its checkpoint starts. Kubelet rotates a log by moving it aside and
+     * starting a new file under the same name, a record starting before the ones already read gets a new checkpoint with
+     * the key of the new file. The unacknowledged records of the rotated file can't be replayed under its new name.
+     */
+    FileCheckpoint get(String path, String filename, String namespace, long offset) {
+        String key = path + "/" + filename;
+        FileCheckpoint checkpoint = checkpoints.get(key);
+        if(checkpoint != null && !checkpoint.isRotated(offset)) {
+            return checkpoint;
+        }
+        FileCheckpoint created = new FileCheckpoint(path, filename, fileKey(Paths.get(path, filename)), namespace, offset);
+        if(checkpoint == null) {
+            checkpoint = checkpoints.putIfAbsent(key, created);
+            if(checkpoint != null) {
+                return checkpoint;
+            }
+        }
+        else {
+            if(!checkpoints.replace(key, checkpoint, created)) {
+                // Replaced or removed meanwhile
+                return get(path, filename, namespace, offset);
+            }
+            LOGGER.info(
+                    "File {} has been rotated, starting a new checkpoint at offset {}, {} bytes of the rotated file were not acknowledged",
+                    Paths.get(path, filename),
+                    offset,
+                    checkpoint.getReadOffset() - checkpoint.getAcknowledgedOffset()
+            );
+            checkpoint.release();
+        }
+        checkpoint = created;
+        // New files are committed without waiting for the timer, a crash before that would lose their unacknowledged records
+        if(persist && commitRequested.compareAndSet(false, true)) {
+            try {
+                commitExecutor.execute(() -> {
+                    commitRequested.set(false);
+                    commit();
+                });
+            }
+            catch (RejectedExecutionException e) {
+                // Closing, the final commit includes the new file
+                commitRequested.set(false);
+            }
+        }
+        return checkpoint;
+    }
+
+    Collection<FileCheckpoint> getCheckpoints() {
+        return checkpoints.values();
+    }
+
+    // Identifies the file behind the path, a rotated file with the same name has a different key
+    private static String fileKey(Path file) {
+        try {
+            Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            return key == null ? null : key.toString();
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sends every complete line after the acknowledged offset of each file in the committed checkpoints, up to the end
+     * of the file. The file reader resumes from its own offset somewhere in between and skips the records replayed here.
+     * A record that fails is logged and completed so it doesn't stop the startup. Must be called before the file reader
+     * is started.
+     */
+    void replay(RecordConsumer consumer) {
+        for(Entry entry : stored) {
+            Path file = Paths.get(entry.path, entry.filename);
+            String key = fileKey(file);
+            if(key == null || !key.equals(entry.fileKey)) {
+                if(entry.read > entry.acknowledged) {
+                    LOGGER.warn(
+                            "Can't replay {} bytes of {}, file has been rotated or removed",
+                            entry.read - entry.acknowledged,
+                            file
+                    );
+                }
+                continue;
+            }
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if(size < entry.acknowledged) {
+                    LOGGER.warn(
+                            "Can't replay {}, file has been truncated",
+                            file
+                    );
+                    continue;
+                }
+                if(size == entry.acknowledged) {
+                    continue;
+                }
+                LOGGER.info(
+                        "Replaying records of {} from acknowledged offset {} to the end of the file at {}",
+                        file,
+                        entry.acknowledged,
+                        size
+                );
+                channel.position(entry.acknowledged);
+                InputStream input = new BufferedInputStream(Channels.newInputStream(channel));
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                long offset = entry.acknowledged;
+                long startOffset = offset;
+                int b;
+                // A line still being written at the end of the file is left to the file reader
+                while(offset < size && (b = input.read()) != -1) {
+                    offset++;
+                    if(b == '\n') {
+                        replayRecord(consumer, entry, line.toByteArray(), startOffset, offset);
+                        line.reset();
+                        startOffset = offset;
+                    }
+                    else {
+                        line.write(b);
+                    }
+                }
+                FileCheckpoint checkpoint = checkpoints.get(entry.path + "/" + entry.filename);
+                if(checkpoint != null && startOffset > entry.acknowledged) {
+                    checkpoint.replayed(startOffset);
+                }
+            }
+            catch (IOException e) {
+                LOGGER.warn(
+                        "Failed to replay {}: {}",
+                        file,
+                        e.getMessage()
+                );
+            }
+        }
+        stored = new ArrayList<>();
+    }
+
+    private void replayRecord(RecordConsumer consumer, Entry entry, byte[] record, long startOffset, long endOffset) {
+        try {
+            consumer.accept(entry.path, entry.filename, record, startOffset, endOffset);
+        }
+        catch (RuntimeException e) {
+            LOGGER.warn(
+                    "Skipping record of {}/{} from offset {} to {} that failed to replay: ",
+                    entry.path,
+                    entry.filename,
+                    startOffset,
+                    endOffset,
+                    e
+            );
+            FileCheckpoint checkpoint = checkpoints.get(entry.path + "/" + entry.filename);
+            if(checkpoint != null) {
+                checkpoint.complete(endOffset);
+            }
+        }
+    }
+
+    // Checkpoints of files that no longer exist are forgotten, there is nothing left to resume
+    private synchronized void commit() {
+        List<Entry> files = new ArrayList<>();
+        for(FileCheckpoint checkpoint : checkpoints.values()) {
+            if(!Files.exists(Paths.get(checkpoint.getPath(), checkpoint.getFilename()))) {
+                checkpoints.remove(checkpoint.getPath() + "/" + checkpoint.getFilename(), checkpoint);
+                continue;
+            }
+            Entry entry = new Entry();
+            entry.path = checkpoint.getPath();
+            entry.filename = checkpoint.getFilename();
+            entry.fileKey = checkpoint.getFileKey();
+            entry.acknowledged = checkpoint.getAcknowledgedOffset();
+            entry.read = checkpoint.getReadOffset();
+            files.add(entry);
+        }
+        // Files not replayed yet keep their previous checkpoints
+        for(Entry entry : stored) {
+            if(!checkpoints.containsKey(entry.path + "/" + entry.filename)) {
+                files.add(entry);
+            }
+        }
+        if(!persist) {
+            return;
+        }
+        Checkpoints state = new Checkpoints();
+        state.version = VERSION;
+        state.created = System.currentTimeMillis();
+        state.files = files;
+        // Written to a temporary file first so a crash mid-write never leaves truncated checkpoints behind
+        Path temporary = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try {
+            try(Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                new Gson().toJson(state, writer);
+            }
+            Files.move(temporary, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            LOGGER.warn(
+                    "Failed to write acknowledgement checkpoints to {}: {}",
+                    checkpointPath,
+                    e.getMessage()
+            );
+        }
+    }
+
+    // Missing or unusable checkpoints mean nothing is replayed
+    private static List<Entry> read(Path path) {
+        if(!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+        try(Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Checkpoints state = new Gson().fromJson(reader, Checkpoints.class);
+            if(state == null || state.version != VERSION || state.files == null) {
+                LOGGER.warn(
+                        "Ignoring acknowledgement checkpoints {} with unknown format",
+                        path
+                );
+                return new ArrayList<>();
+            }
+            return state.files;
+        }
+        catch (Exception e) {
+            LOGGER.warn(
+                    "Ignoring unreadable acknowledgement checkpoints {}: {}",
+                    path,
+                    e.getMessage()
+            );
+            return new ArrayList<>();
+        }
+    }
+
+    // Called after the output stage has drained so the final acknowledgements are included
+    public void close() {
+        commitExecutor.shutdownNow();
+        commit();
+    }
+}
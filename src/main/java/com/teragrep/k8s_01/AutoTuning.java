@@ -0,0 +1,94 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Thread pool, connection pool and queue sizes derived from the resources of the container. Readers decode and encode,
+ * so they get two threads per CPU. Output connections are mostly waiting for the network and scale between one and
+ * the same amount. The queue holds about 5% of the memory limit worth of average sized events.
+ */
+class AutoTuning {
+    private static final int AVERAGE_EVENT_BYTES = 2048;
+    private final int cpus;
+    private final long memory;
+    private final int readingThreads;
+    private final int maxLogReadingThreads;
+    private final int minConnections;
+    private final int maxConnections;
+    private final int queueSize;
+
+    AutoTuning(ContainerResources resources, int logFileCount, MetricRegistry metricRegistry) {
+        // Without limits the JVM view of the host is used
+        cpus = resources.getCpuLimit() > 0
+                ? (int) Math.max(1, Math.ceil(resources.getCpuLimit()))
+                : Runtime.getRuntime().availableProcessors();
+        memory = resources.getMemoryLimit() > 0 ? resources.getMemoryLimit() : Runtime.getRuntime().maxMemory();
+        readingThreads = clamp(cpus * 2, 2, 64);
+        maxLogReadingThreads = Math.max(1, readingThreads / logFileCount);
+        minConnections = 1;
+        maxConnections = clamp(cpus * 2, 2, 32);
+        queueSize = (int) Math.max(1024, Math.min(memory / 20 / AVERAGE_EVENT_BYTES, 65536));
+
+        metricRegistry.register(name("k8s01", "autotune", "cpus"), (Gauge<Integer>) () -> cpus);
+        metricRegistry.register(name("k8s01", "autotune", "memory"), (Gauge<Long>) () -> memory);
+        metricRegistry.register(name("k8s01", "autotune", "readers"), (Gauge<Integer>) () -> readingThreads);
+        metricRegistry.register(name("k8s01", "autotune", "readers", "perlogfile"), (Gauge<Integer>) () -> maxLogReadingThreads);
+        metricRegistry.register(name("k8s01", "autotune", "connections", "min"), (Gauge<Integer>) () -> minConnections);
+        metricRegistry.register(name("k8s01", "autotune", "connections", "max"), (Gauge<Integer>) () -> maxConnections);
+        metricRegistry.register(name("k8s01", "autotune", "queue"), (Gauge<Integer>) () -> queueSize);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(value, max));
+    }
+
+    int getCpus() {
+        return cpus;
+    }
+
+    long getMemory() {
+        return memory;
+    }
+
+    // Total reading threads for the dispatcher mode
+    int getReadingThreads() {
+        return readingThreads;
+    }
+
+    // Reading threads per logfile pattern
+    int getMaxLogReadingThreads() {
+        return maxLogReadingThreads;
+    }
+
+    int getMinConnections() {
+        return minConnections;
+    }
+
+    int getMaxConnections() {
+        return maxConnections;
+    }
+
+    int getQueueSize() {
+        return queueSize;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Keeps the cardinality of a metric label bounded, values seen after the limit is reached are reported as "other" */
+class BoundedLabelValues {
+    static final String OTHER = "other";
+    private final int maxValues;
+    private final Set<String> values = ConcurrentHashMap.newKeySet();
+
+    BoundedLabelValues(int maxValues) {
+        this.maxValues = maxValues;
+    }
+
+    String get(String value) {
+        if(values.contains(value)) {
+            return value;
+        }
+        // Racing threads may go slightly over the limit, which is fine for a label
+        if(values.size() < maxValues) {
+            values.add(value);
+            return value;
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/* Wall clock with second precision kept up to date by a background thread, reading it doesn't allocate */
+class CoarseClock {
+    private static final long TICK_MILLIS = 50;
+    private volatile Second current;
+
+    CoarseClock() {
+        current = new Second(System.currentTimeMillis() / 1000);
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CoarseClock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        long epochSecond = System.currentTimeMillis() / 1000;
+        if(epochSecond != current.epochSecond) {
+            current = new Second(epochSecond);
+        }
+    }
+
+    long getEpochSecond() {
+        return current.epochSecond;
+    }
+
+    // Same as String.valueOf(getEpochSecond()), formatted once per second
+    String getEpochSecondString() {
+        return current.text;
+    }
+
+    private static final class Second {
+        private final long epochSecond;
+        private final String text;
+
+        private Second(long epochSecond) {
+            this.epochSecond = epochSecond;
+            this.text = String.valueOf(epochSecond);
+        }
+    }
+}
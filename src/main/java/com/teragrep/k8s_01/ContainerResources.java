@@ -0,0 +1,112 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/* CPU quota and memory limit of the container, read from cgroups v2 or v1. Unlimited values are -1. */
+class ContainerResources {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContainerResources.class);
+    private static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+    // cgroups v1 reports an unlimited memory as a page aligned Long.MAX_VALUE
+    private static final long V1_UNLIMITED_MEMORY = 1L << 60;
+    private final double cpuLimit;
+    private final long memoryLimit;
+
+    ContainerResources(double cpuLimit, long memoryLimit) {
+        this.cpuLimit = cpuLimit;
+        this.memoryLimit = memoryLimit;
+    }
+
+    static ContainerResources detect() {
+        return detect(CGROUP_ROOT);
+    }
+
+    static ContainerResources detect(Path root) {
+        Path cpuMax = root.resolve("cpu.max");
+        if(Files.exists(cpuMax)) {
+            // cgroups v2: "<quota> <period>" where quota can be "max", memory.max is bytes or "max"
+            double cpuLimit = -1;
+            String[] cpu = read(cpuMax).split(" ");
+            if(cpu.length == 2 && !"max".equals(cpu[0])) {
+                cpuLimit = quota(parse(cpu[0]), parse(cpu[1]));
+            }
+            String memory = read(root.resolve("memory.max"));
+            long memoryLimit = "max".equals(memory) ? -1 : parse(memory);
+            return new ContainerResources(cpuLimit, memoryLimit);
+        }
+        // cgroups v1: quota of -1 is unlimited, controllers may be mounted together as "cpu,cpuacct"
+        Path cpuController = Files.exists(root.resolve("cpu")) ? root.resolve("cpu") : root.resolve("cpu,cpuacct");
+        double cpuLimit = quota(
+                parse(read(cpuController.resolve("cpu.cfs_quota_us"))),
+                parse(read(cpuController.resolve("cpu.cfs_period_us")))
+        );
+        long memoryLimit = parse(read(root.resolve("memory").resolve("memory.limit_in_bytes")));
+        if(memoryLimit >= V1_UNLIMITED_MEMORY) {
+            memoryLimit = -1;
+        }
+        return new ContainerResources(cpuLimit, memoryLimit);
+    }
+
+    // Missing files mean the controller is not available, which is handled like no limit
+    private static String read(Path path) {
+        try {
+            return new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+        }
+        catch (IOException e) {
+            LOGGER.debug(
+                    "Can't read cgroup file {}: {}",
+                    path,
+                    e.getMessage()
+            );
+            return "";
+        }
+    }
+
+    private static double quota(long quota, long period) {
+        if(quota <= 0 || period <= 0) {
+            return -1;
+        }
+        return quota / (double) period;
+    }
+
+    // Unreadable values are handled like no limit
+    private static long parse(String value) {
+        try {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    double getCpuLimit() {
+        return cpuLimit;
+    }
+
+    long getMemoryLimit() {
+        return memoryLimit;
+    }
+}
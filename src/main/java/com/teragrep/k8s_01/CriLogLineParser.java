@@ -0,0 +1,122 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser for CRI log lines written by containerd and CRI-O: "<RFC3339Nano> <stream> <P|F>[:tags] <message>".
+ * The message is not copied, it is returned as a slice of the parsed line.
+ * Not thread-safe, use one instance per thread.
+ */
+class CriLogLineParser implements LogLineDecoder {
+    private byte[] line;
+    private String time;
+    private String stream;
+    private boolean partial;
+    private int messageOffset;
+    private int messageLength;
+
+    @Override
+    public void parse(byte[] line) {
+        this.line = line;
+        int end = line.length;
+        // Records may or may not include the line terminator
+        if(end > 0 && line[end - 1] == '\n') {
+            end--;
+        }
+        int timeEnd = indexOfSpace(0, end);
+        int streamEnd = indexOfSpace(timeEnd + 1, end);
+        int tagEnd = indexOfSpace(streamEnd + 1, end);
+        if(timeEnd <= 0 || streamEnd <= timeEnd + 1 || streamEnd + 1 >= end || tagEnd == streamEnd + 1) {
+            throw new IllegalArgumentException("Expected <timestamp> <stream> <tag> <message>");
+        }
+        time = new String(line, 0, timeEnd, StandardCharsets.US_ASCII);
+        stream = streamName(timeEnd + 1, streamEnd);
+        // Tags are separated with ':', the first one tells if the line is partial
+        partial = line[streamEnd + 1] == 'P';
+        if(tagEnd < 0) {
+            // Empty message, even the separating space can be missing
+            messageOffset = end;
+            messageLength = 0;
+        }
+        else {
+            messageOffset = tagEnd + 1;
+            messageLength = end - messageOffset;
+        }
+    }
+
+    @Override
+    public String getTimestamp() {
+        return time;
+    }
+
+    @Override
+    public String getStream() {
+        return stream;
+    }
+
+    @Override
+    public boolean hasMessage() {
+        return true;
+    }
+
+    @Override
+    public byte[] getMessageBytes() {
+        return line;
+    }
+
+    @Override
+    public int getMessageOffset() {
+        return messageOffset;
+    }
+
+    @Override
+    public int getMessageLength() {
+        return messageLength;
+    }
+
+    @Override
+    public boolean isPartial() {
+        return partial;
+    }
+
+    // Returns -1 if not found
+    private int indexOfSpace(int from, int end) {
+        for(int i = from; i < end; i++) {
+            if(line[i] == ' ') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Common stream names are not allocated again for every line
+    private String streamName(int start, int end) {
+        int length = end - start;
+        if(length == 6 && line[start] == 's' && line[start + 1] == 't' && line[start + 2] == 'd') {
+            if(line[start + 3] == 'o' && line[start + 4] == 'u' && line[start + 5] == 't') {
+                return "stdout";
+            }
+            if(line[start + 3] == 'e' && line[start + 4] == 'r' && line[start + 5] == 'r') {
+                return "stderr";
+            }
+        }
+        return new String(line, start, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.teragrep.k8s_01.config.AppConfigRelpSpool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * On-disk FIFO of encoded events that absorbs traffic while the Relp senders can't keep up, for example during an
+ * outage of the Relp target. Events are written into memory-mapped segment files and survive a restart. Replayed events
+ * are removed from the spool only once they have been acknowledged, so events in flight are replayed again after a crash.
+ * Must be thread-safe
+ */
+public class DiskSpool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskSpool.class);
+    private final Path directory;
+    private final AppConfigRelpSpool config;
+    private final Deque<SpoolSegment> segments = new ArrayDeque<>();
+    private final Meter droppedRecords;
+    private long nextSegmentId = 0;
+    private volatile long spooledRecords = 0;
+    private volatile long spooledBytes = 0;
+
+    DiskSpool(Path directory, AppConfigRelpSpool config, MetricRegistry metricRegistry) throws IOException {
+        this.directory = directory;
+        this.config = config;
+        Files.createDirectories(directory);
+        recover();
+        droppedRecords = metricRegistry.meter(name("k8s01", "spool", "dropped"));
+        metricRegistry.register(name("k8s01", "spool", "records"), (Gauge<Long>) () -> spooledRecords);
+        metricRegistry.register(name("k8s01", "spool", "bytes"), (Gauge<Long>) () -> spooledBytes);
+    }
+
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.spool")) {
+            stream.forEach(paths::add);
+        }
+        // Segment names are zero padded so lexical order is also the order they were written in
+        Collections.sort(paths);
+        for(Path path : paths) {
+            SpoolSegment segment = SpoolSegment.open(path);
+            segments.addLast(segment);
+            spooledRecords += segment.getRecords();
+            spooledBytes += segment.getBytes();
+            String filename = path.getFileName().toString();
+            nextSegmentId = Math.max(
+                    nextSegmentId,
+                    Long.parseLong(filename.substring("segment-".length(), filename.length() - ".spool".length())) + 1
+            );
+        }
+        // Fully replayed segments that will not get any new records
+        while(segments.size() > 1 && segments.peekFirst().getRecords() == 0) {
+            removeHead();
+        }
+        if(spooledRecords > 0) {
+            LOGGER.info(
+                    "Recovered {} spooled records ({} bytes) from {}, replaying them first",
+                    spooledRecords,
+                    spooledBytes,
+                    directory
+            );
+        }
+    }
+
+    public boolean isEmpty() {
+        return spooledRecords == 0;
+    }
+
+    /* Spooled event handed out for replay, removed from the spool once acknowledged */
+    public final class Record {
+        private final SpoolSegment segment;
+        private final int position;
+        private final String id;
+        private final byte[] payload;
+
+        private Record(SpoolSegment segment, int position) {
+            this.segment = segment;
+            this.position = position;
+            this.id = segment.readId(position);
+            this.payload = segment.readPayload(position);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public String getSegment() {
+            return segment.getPath().getFileName().toString();
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public void acknowledge() {
+            DiskSpool.this.acknowledge(this);
+        }
+    }
+
+    /**
+     * Appends an event to the tail of the spool. With the "block" drop policy nothing is dropped: false is returned when
+     * the spool is full or the event does not fit into a segment, and the event stays the responsibility of the caller.
+     * Otherwise the spool takes the event, dropping events according to the drop policy when it is full.
+     */
+    public synchronized boolean append(String id, byte[] payload) {
+        byte[] encodedId = SpoolSegment.encodeId(id);
+        SpoolSegment tail = segments.peekLast();
+        if(tail == null || !tail.append(encodedId, payload)) {
+            boolean block = config.getDropPolicy().equals("block");
+            if(SpoolSegment.recordSize(encodedId, payload) > config.getSegmentSize() - SpoolSegment.HEADER_SIZE) {
+                if(block) {
+                    return false;
+                }
+                LOGGER.warn(
+                        "[{}] Dropping event of {} bytes as it does not fit into a spool segment of {} bytes",
+                        id,
+                        payload.length,
+                        config.getSegmentSize()
+                );
+                droppedRecords.mark();
+                return true;
+            }
+            // Make room for a new segment according to the drop policy
+            while((long) (segments.size() + 1) * config.getSegmentSize() > config.getMaxBytes() && !segments.isEmpty()) {
+                if(block) {
+                    return false;
+                }
+                if(config.getDropPolicy().equals("newest")) {
+                    droppedRecords.mark();
+                    return true;
+                }
+                long dropped = segments.peekFirst().getRecords();
+                if(dropped > 0) {
+                    LOGGER.warn(
+                            "Spool is full, dropping {} oldest records",
+                            dropped
+                    );
+                    droppedRecords.mark(dropped);
+                }
+                removeHead();
+            }
+            try {
+                tail = SpoolSegment.create(
+                        directory.resolve(String.format("segment-%020d.spool", nextSegmentId++)),
+                        config.getSegmentSize()
+                );
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            segments.addLast(tail);
+            tail.append(encodedId, payload);
+        }
+        spooledRecords++;
+        spooledBytes += SpoolSegment.recordSize(encodedId, payload);
+        return true;
+    }
+
+    // Next record that has not been handed out for replay yet, null when there is none
+    public synchronized Record next() {
+        for(SpoolSegment segment : segments) {
+            int position = segment.next();
+            if(position >= 0) {
+                return new Record(segment, position);
+            }
+        }
+        return null;
+    }
+
+    // Acknowledgements of segments the drop policy has already removed are ignored
+    private synchronized void acknowledge(Record record) {
+        SpoolSegment segment = record.segment;
+        if(!segments.contains(segment)) {
+            return;
+        }
+        long recordsBefore = segment.getRecords();
+        long bytesBefore = segment.getBytes();
+        segment.acknowledge(record.position);
+        spooledRecords -= recordsBefore - segment.getRecords();
+        spooledBytes -= bytesBefore - segment.getBytes();
+        if(segment.getRecords() == 0 && segment != segments.peekLast()) {
+            // Fully replayed segment that will not get any new records
+            segments.remove(segment);
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void removeHead() {
+        SpoolSegment head = segments.pollFirst();
+        if(head == null) {
+            return;
+        }
+        spooledRecords -= head.getRecords();
+        spooledBytes -= head.getBytes();
+        try {
+            head.delete();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
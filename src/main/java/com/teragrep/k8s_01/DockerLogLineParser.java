@@ -0,0 +1,511 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single pass parser for docker json-file log lines such as {"log":"..","stream":"stdout","time":".."}.
+ * The log value is unescaped straight into a reusable buffer, producing the same UTF-8 bytes as
+ * decoding the line with Gson and encoding the resulting String again.
+ * Not thread-safe, use one instance per thread.
+ */
+class DockerLogLineParser implements LogLineDecoder {
+    // Docker splits lines longer than this into several entries, only the last one ends with a newline
+    private static final int SPLIT_SIZE = 16 * 1024;
+    private static final byte[] LOG = "log".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STREAM = "stream".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIME = "time".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STDOUT = "stdout".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STDERR = "stderr".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] input;
+    private int position;
+    private final ByteSink log = new ByteSink(4096);
+    private final ByteSink scratch = new ByteSink(64);
+    private boolean hasLog;
+    private String stream;
+    private String time;
+
+    /**
+     * Parses a line, throws IllegalArgumentException if it is not a JSON object.
+     * Fields that are missing or null are reported as null, unknown fields are skipped.
+     */
+    @Override
+    public void parse(byte[] line) {
+        input = line;
+        position = 0;
+        hasLog = false;
+        stream = null;
+        time = null;
+        log.reset();
+
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if(peek() == '}') {
+            position++;
+        }
+        else {
+            while(true) {
+                skipWhitespace();
+                expect('"');
+                scratch.reset();
+                readString(scratch);
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if(scratch.equalsBytes(LOG)) {
+                    log.reset();
+                    hasLog = readField(log);
+                }
+                else if(scratch.equalsBytes(STREAM)) {
+                    scratch.reset();
+                    stream = readField(scratch) ? streamName() : null;
+                }
+                else if(scratch.equalsBytes(TIME)) {
+                    scratch.reset();
+                    time = readField(scratch) ? new String(scratch.bytes, 0, scratch.length, StandardCharsets.UTF_8) : null;
+                }
+                else {
+                    skipValue();
+                }
+                skipWhitespace();
+                byte next = next();
+                if(next == '}') {
+                    break;
+                }
+                if(next != ',') {
+                    throw unexpected(next);
+                }
+            }
+        }
+        skipWhitespace();
+        if(position < input.length) {
+            throw new IllegalArgumentException("JSON document was not fully consumed at position " + position);
+        }
+    }
+
+    @Override
+    public boolean hasMessage() {
+        return hasLog;
+    }
+
+    @Override
+    public byte[] getMessageBytes() {
+        return log.bytes;
+    }
+
+    @Override
+    public int getMessageOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getMessageLength() {
+        return log.length;
+    }
+
+    @Override
+    public boolean isPartial() {
+        return log.length == SPLIT_SIZE && log.bytes[SPLIT_SIZE - 1] != '\n';
+    }
+
+    @Override
+    public String getStream() {
+        return stream;
+    }
+
+    @Override
+    public String getTimestamp() {
+        return time;
+    }
+
+    // Common stream names are not allocated again for every line
+    private String streamName() {
+        if(scratch.equalsBytes(STDOUT)) {
+            return "stdout";
+        }
+        if(scratch.equalsBytes(STDERR)) {
+            return "stderr";
+        }
+        return new String(scratch.bytes, 0, scratch.length, StandardCharsets.UTF_8);
+    }
+
+    // Strings are decoded into the sink, numbers and booleans are kept as written like Gson does. Returns false on null.
+    private boolean readField(ByteSink sink) {
+        byte first = peek();
+        if(first == '"') {
+            position++;
+            readString(sink);
+            return true;
+        }
+        if(first == '{' || first == '[') {
+            throw unexpected(first);
+        }
+        int start = position;
+        skipLiteral();
+        if(position - start == 4 && input[start] == 'n' && input[start + 1] == 'u' && input[start + 2] == 'l' && input[start + 3] == 'l') {
+            return false;
+        }
+        sink.put(input, start, position - start);
+        return true;
+    }
+
+    // Position is right after the opening quote, sink can be null to skip the string
+    private void readString(ByteSink sink) {
+        while(true) {
+            if(position >= input.length) {
+                throw new IllegalArgumentException("Unterminated string");
+            }
+            byte b = input[position];
+            if(b == '"') {
+                position++;
+                return;
+            }
+            if(b == '\\') {
+                position++;
+                readEscape(sink);
+            }
+            else if(b >= 0) {
+                // Copy the run of plain ascii at once
+                int start = position;
+                while(position < input.length && input[position] >= 0 && input[position] != '"' && input[position] != '\\') {
+                    position++;
+                }
+                if(sink != null) {
+                    sink.put(input, start, position - start);
+                }
+            }
+            else {
+                readNonAscii(sink);
+            }
+        }
+    }
+
+    // Well-formed UTF-8 is copied as is, malformed runs are left to the JDK decoder so replacements match exactly
+    private void readNonAscii(ByteSink sink) {
+        int start = position;
+        boolean valid = true;
+        while(position < input.length && input[position] < 0) {
+            int length = validUtf8Length(position);
+            if(length == 0) {
+                valid = false;
+                position++;
+            }
+            else {
+                position += length;
+            }
+        }
+        if(sink == null) {
+            return;
+        }
+        if(valid) {
+            sink.put(input, start, position - start);
+        }
+        else {
+            byte[] replaced = new String(input, start, position - start, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+            sink.put(replaced, 0, replaced.length);
+        }
+    }
+
+    private void readEscape(ByteSink sink) {
+        byte escaped = next();
+        byte unescaped;
+        switch (escaped) {
+            case '"':
+            case '\\':
+            case '/':
+                unescaped = escaped;
+                break;
+            case 'b':
+                unescaped = '\b';
+                break;
+            case 'f':
+                unescaped = '\f';
+                break;
+            case 'n':
+                unescaped = '\n';
+                break;
+            case 'r':
+                unescaped = '\r';
+                break;
+            case 't':
+                unescaped = '\t';
+                break;
+            case 'u':
+                readUnicodeEscape(sink);
+                return;
+            default:
+                throw unexpected(escaped);
+        }
+        if(sink != null) {
+            sink.put(unescaped);
+        }
+    }
+
+    // Surrogate pairs are combined, unpaired surrogates become '?' the same way String.getBytes(UTF_8) does
+    private void readUnicodeEscape(ByteSink sink) {
+        int c = readHex();
+        if(Character.isHighSurrogate((char) c)
+                && position + 6 <= input.length
+                && input[position] == '\\'
+                && input[position + 1] == 'u') {
+            int mark = position;
+            position += 2;
+            int low = readHex();
+            if(Character.isLowSurrogate((char) low)) {
+                if(sink != null) {
+                    sink.putCodePoint(Character.toCodePoint((char) c, (char) low));
+                }
+                return;
+            }
+            position = mark;
+        }
+        if(sink == null) {
+            return;
+        }
+        if(Character.isSurrogate((char) c)) {
+            sink.put((byte) '?');
+        }
+        else {
+            sink.putCodePoint(c);
+        }
+    }
+
+    private int readHex() {
+        if(position + 4 > input.length) {
+            throw new IllegalArgumentException("Unterminated unicode escape");
+        }
+        int value = 0;
+        for(int i = 0; i < 4; i++) {
+            int digit = Character.digit(input[position++], 16);
+            if(digit < 0) {
+                throw new IllegalArgumentException("Invalid unicode escape at position " + (position - 1));
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    // Length of the well-formed UTF-8 sequence starting at offset, 0 if malformed
+    private int validUtf8Length(int offset) {
+        int lead = input[offset] & 0xFF;
+        int length;
+        int min = 0x80;
+        int max = 0xBF;
+        if(lead >= 0xC2 && lead <= 0xDF) {
+            length = 2;
+        }
+        else if(lead >= 0xE0 && lead <= 0xEF) {
+            length = 3;
+            if(lead == 0xE0) {
+                min = 0xA0;
+            }
+            else if(lead == 0xED) {
+                max = 0x9F;
+            }
+        }
+        else if(lead >= 0xF0 && lead <= 0xF4) {
+            length = 4;
+            if(lead == 0xF0) {
+                min = 0x90;
+            }
+            else if(lead == 0xF4) {
+                max = 0x8F;
+            }
+        }
+        else {
+            return 0;
+        }
+        if(offset + length > input.length) {
+            return 0;
+        }
+        int second = input[offset + 1] & 0xFF;
+        if(second < min || second > max) {
+            return 0;
+        }
+        for(int i = 2; i < length; i++) {
+            int continuation = input[offset + i] & 0xFF;
+            if(continuation < 0x80 || continuation > 0xBF) {
+                return 0;
+            }
+        }
+        return length;
+    }
+
+    private void skipValue() {
+        byte first = peek();
+        if(first == '"') {
+            position++;
+            readString(null);
+        }
+        else if(first == '{' || first == '[') {
+            int depth = 0;
+            while(true) {
+                byte b = next();
+                if(b == '"') {
+                    readString(null);
+                }
+                else if(b == '{' || b == '[') {
+                    depth++;
+                }
+                else if(b == '}' || b == ']') {
+                    if(--depth == 0) {
+                        return;
+                    }
+                }
+            }
+        }
+        else {
+            skipLiteral();
+        }
+    }
+
+    private void skipLiteral() {
+        int start = position;
+        while(position < input.length) {
+            byte b = input[position];
+            if(b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                break;
+            }
+            position++;
+        }
+        if(position == start) {
+            throw unexpected(peek());
+        }
+    }
+
+    private void skipWhitespace() {
+        while(position < input.length) {
+            byte b = input[position];
+            if(b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private void expect(char expected) {
+        byte b = next();
+        if(b != expected) {
+            throw unexpected(b);
+        }
+    }
+
+    private byte peek() {
+        if(position >= input.length) {
+            throw new IllegalArgumentException("Unexpected end of line");
+        }
+        return input[position];
+    }
+
+    private byte next() {
+        byte b = peek();
+        position++;
+        return b;
+    }
+
+    private IllegalArgumentException unexpected(byte b) {
+        return new IllegalArgumentException(
+                String.format(
+                        "Unexpected character <%c> at position %d",
+                        (char) (b & 0xFF),
+                        position
+                )
+        );
+    }
+
+    /* Growable byte array reused between lines */
+    private static final class ByteSink {
+        private static final int RETAINED_CAPACITY = 1024 * 1024;
+        private final int initialCapacity;
+        private byte[] bytes;
+        private int length;
+
+        ByteSink(int initialCapacity) {
+            this.initialCapacity = initialCapacity;
+            this.bytes = new byte[initialCapacity];
+        }
+
+        void reset() {
+            if(bytes.length > RETAINED_CAPACITY) {
+                // Don't keep a huge buffer around after an unusually large line
+                bytes = new byte[initialCapacity];
+            }
+            length = 0;
+        }
+
+        void put(byte b) {
+            ensureCapacity(1);
+            bytes[length++] = b;
+        }
+
+        void put(byte[] source, int offset, int count) {
+            ensureCapacity(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        void putCodePoint(int codePoint) {
+            ensureCapacity(4);
+            if(codePoint < 0x80) {
+                bytes[length++] = (byte) codePoint;
+            }
+            else if(codePoint < 0x800) {
+                bytes[length++] = (byte) (0xC0 | (codePoint >> 6));
+                bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else if(codePoint < 0x10000) {
+                bytes[length++] = (byte) (0xE0 | (codePoint >> 12));
+                bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else {
+                bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+        }
+
+        boolean equalsBytes(byte[] other) {
+            if(length != other.length) {
+                return false;
+            }
+            for(int i = 0; i < length; i++) {
+                if(bytes[i] != other[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void ensureCapacity(int needed) {
+            if(bytes.length - length >= needed) {
+                return;
+            }
+            int capacity = bytes.length;
+            while(capacity - length < needed) {
+                capacity *= 2;
+            }
+            bytes = Arrays.copyOf(bytes, capacity);
+        }
+    }
+}
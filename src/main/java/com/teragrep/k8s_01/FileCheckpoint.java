@@ -0,0 +1,214 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offsets of a single log file. Records are registered in the order they are read and acknowledged in any order, the
+ * acknowledged offset only moves over records that are acknowledged along with everything read before them.
+ * Must be thread-safe
+ */
+class FileCheckpoint {
+    private final String path;
+    private final String filename;
+    private final String fileKey;
+    private final String namespace;
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    // Fragments of partial lines per stream, waiting for the record that completes the line
+    private final Map<String, List<Pending>> held = new HashMap<>();
+    private long acknowledgedOffset;
+    private long readOffset;
+    private long acknowledgedEventTime = 0; // Kubelet timestamp of the last acknowledged event in epoch milliseconds
+    private long replayedOffset = 0; // End of the records sent by the startup replay, 0 once the file reader has passed it
+
+    FileCheckpoint(String path, String filename, String fileKey, String namespace, long offset) {
+        this.path = path;
+        this.filename = filename;
+        this.fileKey = fileKey;
+        this.namespace = namespace;
+        this.acknowledgedOffset = offset;
+        this.readOffset = offset;
+    }
+
+    /* Record that was published, acknowledged once the Relp target has confirmed it */
+    final class Pending {
+        private final long endOffset;
+        private final long eventTime;
+        private boolean acknowledged;
+        private List<Pending> fragments = null;
+
+        private Pending(long endOffset, long eventTime, boolean acknowledged) {
+            this.endOffset = endOffset;
+            this.eventTime = eventTime;
+            this.acknowledged = acknowledged;
+        }
+
+        void acknowledge() {
+            synchronized (FileCheckpoint.this) {
+                acknowledged = true;
+                if(fragments != null) {
+                    for(Pending fragment : fragments) {
+                        fragment.acknowledged = true;
+                    }
+                }
+                advance();
+            }
+        }
+    }
+
+    // Moves the acknowledged offset over the acknowledged records at the head, caller holds the lock
+    private void advance() {
+        Pending head;
+        while((head = pending.peekFirst()) != null && head.acknowledged) {
+            pending.pollFirst();
+            acknowledgedOffset = head.endOffset;
+            if(head.eventTime > 0) {
+                acknowledgedEventTime = head.eventTime;
+            }
+        }
+    }
+
+    synchronized Pending track(long endOffset, String stream, long eventTime) {
+        readOffset = endOffset;
+        Pending record = new Pending(endOffset, eventTime, false);
+        if(!held.isEmpty()) {
+            record.fragments = held.remove(stream);
+        }
+        pending.addLast(record);
+        return record;
+    }
+
+    // Record that produced nothing to send, for example a filtered one
+    synchronized void complete(long endOffset) {
+        readOffset = endOffset;
+        if(pending.isEmpty()) {
+            acknowledgedOffset = endOffset;
+        }
+        else {
+            pending.addLast(new Pending(endOffset, 0, true));
+        }
+    }
+
+    // Fragment of a partial line, acknowledged along with the record that completes the line
+    synchronized void hold(long endOffset, String stream) {
+        readOffset = endOffset;
+        Pending fragment = new Pending(endOffset, 0, false);
+        held.computeIfAbsent(stream, key -> new ArrayList<>()).add(fragment);
+        pending.addLast(fragment);
+    }
+
+    /**
+     * Fragments of partial lines that will never be sent, ones forgotten along with an expired file state or the state of
+     * a rotated file. They are treated as acknowledged so they don't stop the acknowledged offset for good.
+     */
+    synchronized void release() {
+        for(List<Pending> fragments : held.values()) {
+            for(Pending fragment : fragments) {
+                fragment.acknowledged = true;
+            }
+        }
+        held.clear();
+        advance();
+    }
+
+    // Fragments of the partial line of a stream that failed after it was assembled
+    synchronized void release(String stream) {
+        List<Pending> fragments = held.remove(stream);
+        if(fragments != null) {
+            for(Pending fragment : fragments) {
+                fragment.acknowledged = true;
+            }
+            advance();
+        }
+    }
+
+    // Called once the startup replay has sent everything up to endOffset
+    synchronized void replayed(long endOffset) {
+        replayedOffset = endOffset;
+    }
+
+    /**
+     * True for records already sent by the startup replay. The file reader resumes from its own offset, which can be
+     * anywhere up to the replayed offset, the first record past it ends the skipping.
+     */
+    synchronized boolean isReplayed(long endOffset) {
+        if(replayedOffset == 0) {
+            return false;
+        }
+        if(endOffset <= replayedOffset) {
+            return true;
+        }
+        replayedOffset = 0;
+        return false;
+    }
+
+    /**
+     * True when a record starts before the records already read, the file has been rotated or truncated and is read again
+     * from the start. Records the file reader reads again after the startup replay are not a rotation.
+     */
+    synchronized boolean isRotated(long startOffset) {
+        return startOffset < readOffset && replayedOffset == 0;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    String getFileKey() {
+        return fileKey;
+    }
+
+    String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Wall clock minus the timestamp of the last acknowledged event in milliseconds. Before the first acknowledgement
+     * the oldest waiting event is used instead, 0 when there is neither.
+     */
+    synchronized long getEventLag(long now) {
+        long reference = acknowledgedEventTime;
+        if(reference == 0) {
+            for(Pending record : pending) {
+                if(record.eventTime > 0) {
+                    reference = record.eventTime;
+                    break;
+                }
+            }
+        }
+        return reference == 0 ? 0 : Math.max(0, now - reference);
+    }
+
+    synchronized long getAcknowledgedOffset() {
+        return acknowledgedOffset;
+    }
+
+    synchronized long getReadOffset() {
+        return readOffset;
+    }
+}
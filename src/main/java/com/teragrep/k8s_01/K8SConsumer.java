@@ -17,12 +17,10 @@
 
 package com.teragrep.k8s_01;
 
-import com.teragrep.rlo_14.*;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
+import com.teragrep.rlo_14.Facility;
+import com.teragrep.rlo_14.Severity;
 import com.teragrep.k8s_01.config.AppConfig;
-import com.teragrep.k8s_01.metadata.KubernetesMetadata;
+import com.teragrep.k8s_01.metadata.ContainerStructuredData;
 import com.teragrep.k8s_01.metadata.NamespaceMetadataContainer;
 import com.teragrep.k8s_01.metadata.PodMetadataContainer;
 import com.teragrep.rlo_13.FileRecord;
@@ -31,13 +29,7 @@ import org.slf4j.LoggerFactory;
 
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
@@ -46,313 +38,510 @@ import java.util.regex.Pattern;
  */
 public class K8SConsumer implements Consumer<FileRecord> {
     private static final Logger LOGGER = LoggerFactory.getLogger(K8SConsumer.class);
-    private static final Gson gson = new Gson();
     private final AppConfig appConfig;
     private final KubernetesCachingAPIClient cacheClient;
 
-    private final BlockingQueue<RelpOutput> relpOutputPool;
-    private static final DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSxxx");
-    private final ZoneId timezoneId;
+    private final RelpOutputStage relpOutputStage;
+    private final ThreadLocal<TimestampCodec> timestampCodecs;
 
     // Validators
     private static final Pattern hostnamePattern = Pattern.compile("^[a-zA-Z0-9.-]+$"); // Not perfect but filters basically all mistakes
     private static final Pattern appNamePattern = Pattern.compile("^[\\x21-\\x7e]+$"); // DEC 33 - DEC 126 as specified in RFC5424
     private final boolean whitelistEnabled;
     private final String whitelistLabel;
+    private final LabelSelector podSelector;
+    private final LabelSelector namespaceSelector;
+    private final boolean filteringEnabled;
     private final String apiUrl;
-    private final SDElement sdAdditionalMetadata;
-    private final SDParam sdRealHostname;
-    private final SDParam sdSourceModule = new SDParam("source_module", "k8s_01");
-    private final SDParam sdIdSource = new SDParam("id_source", "source");
+    // Structured-data parts that never change are encoded only once
+    private final byte[] sdAdditionalMetadata;
+    private final byte[] sdRealHostname;
+    private final byte[] sdSourceModule;
+    private final byte[] sdIdSource;
+    private static final ThreadLocal<Rfc5424Encoder> encoders = ThreadLocal.withInitial(Rfc5424Encoder::new);
+    private static final ThreadLocal<DockerLogLineParser> dockerParsers = ThreadLocal.withInitial(DockerLogLineParser::new);
+    private static final ThreadLocal<CriLogLineParser> criParsers = ThreadLocal.withInitial(CriLogLineParser::new);
+    private final LogFileStates fileStates;
+    private final int partialLineMaxBytes;
+    private final EventIdGenerator eventIdGenerator;
+    private static final CoarseClock clock = new CoarseClock();
+    private final RateLimiter rateLimiter;
+    private final MemoryBudget memoryBudget;
+    private final StageLatency stageLatency;
+    // Structured-data and header bytes added to a record when it is encoded
+    private static final int ENCODING_OVERHEAD_ESTIMATE = 1024;
     K8SConsumer(
             AppConfig appConfig,
             KubernetesCachingAPIClient cacheClient,
-            BlockingQueue<RelpOutput> relpOutputPool,
+            RelpOutputStage relpOutputStage,
+            RateLimiter rateLimiter,
+            LogFileStates fileStates,
+            MemoryBudget memoryBudget,
+            EventIdGenerator eventIdGenerator,
+            ThreadLocal<TimestampCodec> timestampCodecs,
+            StageLatency stageLatency,
             String apiUrl
     ) {
+        this.stageLatency = stageLatency;
+        this.rateLimiter = rateLimiter;
+        this.fileStates = fileStates;
+        this.memoryBudget = memoryBudget;
+        this.eventIdGenerator = eventIdGenerator;
+        this.timestampCodecs = timestampCodecs;
         this.appConfig = appConfig;
         this.cacheClient = cacheClient;
-        this.relpOutputPool = relpOutputPool;
+        this.relpOutputStage = relpOutputStage;
         this.apiUrl = apiUrl;
-        this.timezoneId = ZoneId.of(appConfig.getKubernetes().getTimezone());
         this.whitelistEnabled = appConfig.getKubernetes().getLabels().getWhitelist().isEnabled();
         this.whitelistLabel = appConfig.getKubernetes().getLabels().getWhitelist().getLabel();
-        sdAdditionalMetadata = new SDElement("additional_metadata@48577");
+        this.podSelector = LabelSelector.compile(appConfig.getKubernetes().getSelectors().getPod());
+        this.namespaceSelector = LabelSelector.compile(appConfig.getKubernetes().getSelectors().getNamespace());
+        this.filteringEnabled = whitelistEnabled || !podSelector.isEmpty() || !namespaceSelector.isEmpty();
+        this.partialLineMaxBytes = appConfig.getKubernetes().getPartialLineMaxBytes();
+        Rfc5424Encoder encoder = new Rfc5424Encoder();
+        encoder.startElement("additional_metadata@48577");
+        appConfig.getKubernetes().getMetadata().forEach(encoder::param);
+        sdAdditionalMetadata = encoder.endElement().toByteArray();
         try {
-            sdRealHostname = new SDParam("hostname", java.net.InetAddress.getLocalHost().getHostName());
+            sdRealHostname = encoder.reset().param("hostname", java.net.InetAddress.getLocalHost().getHostName()).toByteArray();
         } catch (UnknownHostException e) {
             throw new RuntimeException(e);
         }
-        appConfig.getKubernetes().getMetadata().forEach(sdAdditionalMetadata::addSDParam);
+        sdSourceModule = encoder.reset().param("source_module", "k8s_01").toByteArray();
+        sdIdSource = encoder.reset().param("id_source", "source").toByteArray();
     }
+    // Both the whitelist label and the selectors must match. Whitelist collects pods without labels, selectors treat them as empty.
+    private boolean isCollected(PodMetadataContainer podMetadataContainer, NamespaceMetadataContainer namespaceMetadataContainer) {
+        if(
+                whitelistEnabled
+                && podMetadataContainer.getLabels() != null
+                && !"true".equalsIgnoreCase(podMetadataContainer.getLabels().get(whitelistLabel))
+        ) {
+            return false;
+        }
+        return podSelector.matches(podMetadataContainer.getLabels())
+                && namespaceSelector.matches(namespaceMetadataContainer.getLabels());
+    }
+
     @Override
     public void accept(FileRecord record) {
+        accept(record.getPath(), record.getFilename(), record.getRecord(), record.getStartOffset(), record.getEndOffset());
+    }
+
+    // Also used for replaying unacknowledged records at startup
+    void accept(String path, String filename, byte[] record, long startOffset, long endOffset) {
 
-            UUID uuid = java.util.UUID.randomUUID();
+            String uuid = eventIdGenerator.next();
             if(LOGGER.isDebugEnabled()) {
                 LOGGER.debug(
                         "[{}] Got a new record from file: {}",
                         uuid,
-                        record.getPath()
+                        path
                 );
                 LOGGER.debug(
                         "[{}] Reading {} starting from {}, file progress {}/{}",
                         uuid,
-                        record.getRecord().length,
-                        record.getStartOffset(),
-                        (int) (record.getStartOffset() + record.getRecord().length),
-                        record.getEndOffset()
+                        record.length,
+                        startOffset,
+                        (int) (startOffset + record.length),
+                        endOffset
                 );
             }
-            String namespace = ContainerInfo.getNamespace(record.getFilename());
-            String podname = ContainerInfo.getPodname(record.getFilename());
-            String containerId = ContainerInfo.getContainerID(record.getFilename());
-            KubernetesLogFilePOJO log;
-            try {
-                // We want to read the kubernetes log event into a POJO
-                log = gson.fromJson(new String(record.getRecord(), StandardCharsets.UTF_8), KubernetesLogFilePOJO.class);
-            } catch (JsonParseException e) {
+            LogFileState fileState = fileStates.get(path, filename, record, startOffset);
+            FileCheckpoint checkpoint = fileState.getCheckpoint();
+            if(checkpoint != null && checkpoint.isReplayed(endOffset)) {
                 LOGGER.trace(
-                        "[{}] Invalid syntax message: {}",
+                        "[{}] Skipping record of {}/{} ending at {}, already replayed",
                         uuid,
-                        new String(record.getRecord(), StandardCharsets.UTF_8)
-                );
-                throw new RuntimeException(
-                        String.format(
-                                "[%s] Event from pod <%s>/<%s> on container <%s> in file <%s> offset <%s> can't be parsed properly: %s",
-                                uuid,
-                                namespace,
-                                podname,
-                                containerId,
-                                record.getPath(),
-                                record.getStartOffset(),
-                                e.getMessage()
-                        )
+                        path,
+                        filename,
+                        endOffset
                 );
+                return;
             }
-
-            // Log is in invalid format if timestamp is not available
-            if(log == null || log.getTimestamp() == null) {
+            LogFileDescriptor descriptor = fileState.getDescriptor();
+            String namespace = descriptor.getNamespace();
+            String podname = descriptor.getPodname();
+            String containerId = descriptor.getContainerId();
+            long metadataStarted = System.nanoTime();
+            NamespaceMetadataContainer namespaceMetadataContainer = cacheClient.getNamespace(namespace);
+            PodMetadataContainer podMetadataContainer = cacheClient.getPod(descriptor.getPodKey());
+            long metadataNanos = System.nanoTime() - metadataStarted;
+            // Records of files that are not collected are dropped before they are decoded
+            if(filteringEnabled && !fileState.isCollected(podMetadataContainer, namespaceMetadataContainer, this::isCollected)) {
                 LOGGER.debug(
-                        "[{}] Can't parse this properly: {}",
-                        uuid,
-                        new String(record.getRecord(), StandardCharsets.UTF_8)
-                );
-                throw new RuntimeException(
-                    String.format(
-                        "[%s] Didn't find expected values for event from pod <%s> on container <%s> in file %s/%s at offset %s",
+                        "[{}] Discarding event from pod <{}/{}> on container <{}>",
                         uuid,
                         namespace,
                         podname,
-                        containerId,
-                        record.getPath(),
-                        record.getStartOffset()
-                    )
+                        containerId
                 );
+                if(checkpoint != null) {
+                    checkpoint.complete(endOffset);
+                }
+                return;
             }
-            Instant instant;
-            try {
-                instant = Instant.parse(log.getTimestamp());
+            // Records over the rate limit are delayed or dropped before they are decoded
+            if(rateLimiter != null) {
+                boolean acquired;
+                try {
+                    acquired = rateLimiter.acquire(descriptor.getPodKey(), record.length);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                if(!acquired) {
+                    LOGGER.trace(
+                            "[{}] Dropping event from pod <{}/{}> on container <{}> over the rate limit",
+                            uuid,
+                            namespace,
+                            podname,
+                            containerId
+                    );
+                    if(checkpoint != null) {
+                        checkpoint.complete(endOffset);
+                    }
+                    return;
+                }
             }
-            catch(DateTimeParseException e) {
-                throw new RuntimeException(
-                        String.format(
-                                "[%s] Can't parse timestamp <%s> properly for event from pod <[%s]> on container <%s> in file %s/%s at offset %s: ",
-                                uuid,
-                                log.getTimestamp(),
-                                namespace,
-                                podname,
-                                containerId,
-                                record.getPath(),
-                                record.getStartOffset()
-                        ),
-                        e
-                );
+            // Reserved before decoding and released when the event is acknowledged, the encoded size is estimated
+            int reserved = 0;
+            if(memoryBudget != null) {
+                try {
+                    reserved = memoryBudget.acquire(record.length + ENCODING_OVERHEAD_ESTIMATE);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
             }
-            if(instant == null) {
-                throw new RuntimeException(
+            String assembledStream = null; // Stream of a partial line assembled from held fragments
+            try {
+                long decodeStarted = System.nanoTime();
+                LogLineDecoder log = fileState.getFormat() == LogFileState.Format.CRI ? criParsers.get() : dockerParsers.get();
+                try {
+                    // Pulls message, stream and time straight from the raw bytes
+                    log.parse(record);
+                } catch (IllegalArgumentException e) {
+                    LOGGER.trace(
+                            "[{}] Invalid syntax message: {}",
+                            uuid,
+                            new String(record, StandardCharsets.UTF_8)
+                    );
+                    throw new RuntimeException(
+                            String.format(
+                                    "[%s] Event from pod <%s>/<%s> on container <%s> in file <%s> offset <%s> can't be parsed properly: %s",
+                                    uuid,
+                                    namespace,
+                                    podname,
+                                    containerId,
+                                    path,
+                                    startOffset,
+                                    e.getMessage()
+                            )
+                    );
+                }
+
+                // Log is in invalid format if timestamp is not available
+                if(log.getTimestamp() == null) {
+                    LOGGER.debug(
+                            "[{}] Can't parse this properly: {}",
+                            uuid,
+                            new String(record, StandardCharsets.UTF_8)
+                    );
+                    throw new RuntimeException(
                         String.format(
-                                "[%s] Unknown failure while parsing timestamp <%s> for event from pod <[%s]> on container <%s> in file %s/%s at offset %s",
+                            "[%s] Didn't find expected values for event from pod <%s> on container <%s> in file %s/%s at offset %s",
+                            uuid,
+                            namespace,
+                            podname,
+                            containerId,
+                            path,
+                            startOffset
+                        )
+                    );
+                }
+
+                // Fragments of long lines are held back until the final fragment arrives or the line grows too large
+                String time = log.getTimestamp();
+                boolean hasMessage = log.hasMessage();
+                byte[] message = log.getMessageBytes();
+                int messageOffset = log.getMessageOffset();
+                int messageLength = log.getMessageLength();
+                if(log.isPartial() || fileState.hasPartialLine(log.getStream())) {
+                    LogFileState.PartialLine partialLine = fileState.append(
+                            log.getStream(),
+                            time,
+                            message,
+                            messageOffset,
+                            messageLength,
+                            log.isPartial(),
+                            partialLineMaxBytes
+                    );
+                    if(partialLine == null) {
+                        LOGGER.trace(
+                                "[{}] Waiting for the rest of a partial line",
+                                uuid
+                        );
+                        if(checkpoint != null) {
+                            checkpoint.hold(endOffset, log.getStream());
+                        }
+                        return;
+                    }
+                    assembledStream = log.getStream();
+                    time = partialLine.getTimestamp();
+                    hasMessage = true;
+                    message = partialLine.getBytes();
+                    messageOffset = 0;
+                    messageLength = partialLine.getLength();
+                }
+                String timestamp;
+                try {
+                    timestamp = timestampCodecs.get().convert(time);
+                }
+                catch(DateTimeParseException e) {
+                    throw new RuntimeException(
+                            String.format(
+                                    "[%s] Can't parse timestamp <%s> properly for event from pod <[%s]> on container <%s> in file %s/%s at offset %s: ",
+                                    uuid,
+                                    time,
+                                    namespace,
+                                    podname,
+                                    containerId,
+                                    path,
+                                    startOffset
+                            ),
+                            e
+                    );
+                }
+                stageLatency.observeSince(StageLatency.Stage.DECODE, decodeStarted);
+
+                if(LOGGER.isTraceEnabled()) {
+                    LOGGER.trace(
+                            "[{}] Raw record value: {}",
+                            uuid,
+                            new String(record, StandardCharsets.UTF_8)
+                    );
+                }
+
+                long structuredDataStarted = System.nanoTime();
+                ContainerStructuredData containerStructuredData = podMetadataContainer.getStructuredData(containerId);
+                if(containerStructuredData == null || !containerStructuredData.isBuiltFrom(namespaceMetadataContainer)) {
+                    containerStructuredData = new ContainerStructuredData(
+                            namespaceMetadataContainer,
+                            podMetadataContainer,
+                            descriptor.getContainerName(),
+                            containerId,
+                            apiUrl,
+                            encoders.get()
+                    );
+                    podMetadataContainer.putStructuredData(containerId, containerStructuredData);
+                    if(LOGGER.isTraceEnabled()) {
+                        LOGGER.trace(
+                                "[{}] Built structured-data for container <{}>: {}",
                                 uuid,
-                                log.getTimestamp(),
-                                namespace,
-                                podname,
                                 containerId,
-                                record.getPath(),
-                                record.getStartOffset()
-                        )
-                );
-            }
-            ZonedDateTime zdt = instant.atZone(timezoneId);
-            String timestamp = zdt.format(format);
+                                new String(containerStructuredData.getKubernetesMeta(), StandardCharsets.UTF_8)
+                        );
+                    }
+                }
+                stageLatency.observe(StageLatency.Stage.METADATA, metadataNanos + System.nanoTime() - structuredDataStarted);
 
-            LOGGER.trace(
-                    "[{}] Raw record value: {}",
-                    uuid,
-                    log
-            );
+                // Handle hostname and appName, use fallback values when labels are empty or if label not found
+                String hostname;
+                String appName;
+                if(podMetadataContainer.getLabels() == null) {
+                    LOGGER.warn(
+                            "[{}] Can't resolve metadata and/or labels for container <{}>, using fallback values for hostname and appName",
+                            uuid,
+                            containerId
+                    );
+                    hostname = appConfig.getKubernetes().getLabels().getHostname().getFallback();
+                    appName = appConfig.getKubernetes().getLabels().getAppName().getFallback();
+                }
+                else {
+                    hostname = podMetadataContainer.getLabels().getOrDefault(
+                            appConfig.getKubernetes().getLabels().getHostname().getLabel(log.getStream()),
+                            appConfig.getKubernetes().getLabels().getHostname().getFallback()
+                    );
+                    appName = podMetadataContainer.getLabels().getOrDefault(
+                            appConfig.getKubernetes().getLabels().getAppName().getLabel(log.getStream()),
+                            appConfig.getKubernetes().getLabels().getAppName().getFallback()
+                    );
+                }
 
-            NamespaceMetadataContainer namespaceMetadataContainer = cacheClient.getNamespace(namespace);
-            PodMetadataContainer podMetadataContainer = cacheClient.getPod(namespace, podname);
-            if(whitelistEnabled) {
-                if(
-                        podMetadataContainer.getLabels() != null
-                        && (
-                               !podMetadataContainer.getLabels().containsKey(whitelistLabel)
-                               || !podMetadataContainer.getLabels().get(whitelistLabel).equalsIgnoreCase("true")
-                        )
-                ) {
+                if(!hostnamePattern.matcher(hostname).matches()) {
+                    throw new RuntimeException(
+                            String.format(
+                                    "[%s] Detected hostname <[%s]> from pod <[%s]/[%s]> on container <%s> contains invalid characters, can't continue",
+                                    uuid,
+                                    hostname,
+                                    namespace,
+                                    podname,
+                                    containerId
+                            )
+                    );
+                }
+
+                if(hostname.length() >= 255) {
+                    throw new RuntimeException(
+                            String.format(
+                                    "[%s] Detected hostname <[%s]...> from pod <[%s]/[%s]> on container <%s> is too long, can't continue",
+                                    uuid,
+                                    hostname.substring(0,30),
+                                    namespace,
+                                    podname,
+                                    containerId
+                            )
+                    );
+                }
+
+                if(!appNamePattern.matcher(appName).matches()) {
+                    throw new RuntimeException(
+                            String.format(
+                                    "[%s] Detected appName <[%s]> from pod <[%s]/[%s]> on container <%s> contains invalid characters, can't continue",
+                                    uuid,
+                                    appName,
+                                    namespace,
+                                    podname,
+                                    containerId
+                            )
+                    );
+                }
+                if(appName.length() > 48) {
+                    throw new RuntimeException(
+                            String.format(
+                                    "[%s] Detected appName <[%s]...> from pod <[%s]/[%s]> on container <%s> is too long, can't continue",
+                                    uuid,
+                                    appName.substring(0,30),
+                                    namespace,
+                                    podname,
+                                    containerId
+                            )
+                    );
+                }
+
+                if(LOGGER.isDebugEnabled()) {
                     LOGGER.debug(
-                            "[{}] Discarding event from pod <{}/{}> on container <{}>",
+                            "[{}] Resolved message to be {}@{} from {}/{} generated at {}",
                             uuid,
+                            appName,
+                            hostname,
                             namespace,
                             podname,
-                            containerId
+                            timestamp
                     );
-                    return;
                 }
-            }
-            KubernetesMetadata kubernetesMetadata = new KubernetesMetadata(
-                    namespaceMetadataContainer,
-                    podMetadataContainer,
-                    ContainerInfo.getContainerName(record.getFilename()),
-                    apiUrl
-            );
-            JsonObject dockerMetadata = new JsonObject();
-            dockerMetadata.addProperty("container_id", containerId);
 
-            // Handle hostname and appName, use fallback values when labels are empty or if label not found
-            String hostname;
-            String appName;
-            if(podMetadataContainer.getLabels() == null) {
-                LOGGER.warn(
-                        "[{}] Can't resolve metadata and/or labels for container <{}>, using fallback values for hostname and appName",
+                // Drops since the previous event of the pod are reported once the pod is under the limit again
+                if(rateLimiter != null) {
+                    long[] dropped = rateLimiter.takeDropped(descriptor.getPodKey());
+                    if(dropped != null) {
+                        String summary = String.format(
+                                "k8s_01 dropped %d events (%d bytes) from pod %s/%s over the rate limit",
+                                dropped[0],
+                                dropped[1],
+                                namespace,
+                                podname
+                        );
+                        LOGGER.warn(summary);
+                        byte[] summaryBytes = summary.getBytes(StandardCharsets.UTF_8);
+                        publish(
+                                eventIdGenerator.next(),
+                                timestamp,
+                                hostname,
+                                appName,
+                                containerStructuredData,
+                                path,
+                                log.getStream(),
+                                summaryBytes,
+                                0,
+                                summaryBytes.length,
+                                null,
+                                0
+                        );
+                    }
+                }
+                publish(
                         uuid,
-                        containerId
-                );
-                hostname = appConfig.getKubernetes().getLabels().getHostname().getFallback();
-                appName = appConfig.getKubernetes().getLabels().getAppName().getFallback();
-            }
-            else {
-                hostname = podMetadataContainer.getLabels().getOrDefault(
-                        appConfig.getKubernetes().getLabels().getHostname().getLabel(log.getStream()),
-                        appConfig.getKubernetes().getLabels().getHostname().getFallback()
-                );
-                appName = podMetadataContainer.getLabels().getOrDefault(
-                        appConfig.getKubernetes().getLabels().getAppName().getLabel(log.getStream()),
-                        appConfig.getKubernetes().getLabels().getAppName().getFallback()
+                        timestamp,
+                        hostname,
+                        appName,
+                        containerStructuredData,
+                        path,
+                        log.getStream(),
+                        hasMessage ? message : null,
+                        messageOffset,
+                        messageLength,
+                        checkpoint == null ? null : checkpoint.track(endOffset, log.getStream(), timestampCodecs.get().getEpochMillis()),
+                        reserved
                 );
+                // Released by the output stage from now on
+                reserved = 0;
             }
-
-            if(!hostnamePattern.matcher(hostname).matches()) {
-                throw new RuntimeException(
-                        String.format(
-                                "[%s] Detected hostname <[%s]> from pod <[%s]/[%s]> on container <%s> contains invalid characters, can't continue",
-                                uuid,
-                                hostname,
-                                namespace,
-                                podname,
-                                containerId
-                        )
-                );
+            catch (RuntimeException e) {
+                // The line is never sent, its held fragments must not stop the acknowledged offset
+                if(assembledStream != null && checkpoint != null) {
+                    checkpoint.release(assembledStream);
+                }
+                throw e;
             }
-
-            if(hostname.length() >= 255) {
-                throw new RuntimeException(
-                        String.format(
-                                "[%s] Detected hostname <[%s]...> from pod <[%s]/[%s]> on container <%s> is too long, can't continue",
-                                uuid,
-                                hostname.substring(0,30),
-                                namespace,
-                                podname,
-                                containerId
-                        )
-                );
+            finally {
+                if(memoryBudget != null) {
+                    memoryBudget.release(reserved);
+                }
             }
+    }
 
-            if(!appNamePattern.matcher(appName).matches()) {
-                throw new RuntimeException(
-                        String.format(
-                                "[%s] Detected appName <[%s]> from pod <[%s]/[%s]> on container <%s> contains invalid characters, can't continue",
-                                uuid,
-                                appName,
-                                namespace,
-                                podname,
-                                containerId
-                        )
-                );
+    // Crafts syslog message and structured-data, encoded once straight into bytes. Message and pending can be null, reserved bytes are released on acknowledgement.
+    private void publish(
+            String uuid,
+            String timestamp,
+            String hostname,
+            String appName,
+            ContainerStructuredData containerStructuredData,
+            String source,
+            String stream,
+            byte[] message,
+            int messageOffset,
+            int messageLength,
+            FileCheckpoint.Pending pending,
+            int reserved
+    ) {
+            long encodeStarted = System.nanoTime();
+            Rfc5424Encoder encoder = encoders.get()
+                    .reset()
+                    .header(Facility.USER, Severity.WARNING, timestamp, hostname, appName)
+                    .raw(sdAdditionalMetadata)
+                    .raw(containerStructuredData.getOrigin())
+                    .startElement("event_node_source@48577")
+                    .raw(sdRealHostname)
+                    .param("source", source)
+                    .raw(sdSourceModule)
+                    .endElement()
+                    .startElement("event_id@48577")
+                    .raw(sdRealHostname)
+                    .param("uuid", uuid)
+                    .param("unixtime", clock.getEpochSecondString())
+                    .raw(sdIdSource)
+                    .endElement()
+                    .startElement("kubernetesmeta@48577")
+                    .raw(containerStructuredData.getKubernetesMeta())
+                    .param("stream", stream)
+                    .endElement();
+            if(message != null) {
+                encoder.message(message, messageOffset, messageLength);
             }
-            if(appName.length() > 48) {
-                throw new RuntimeException(
-                        String.format(
-                                "[%s] Detected appName <[%s]...> from pod <[%s]/[%s]> on container <%s> is too long, can't continue",
+            byte[] syslog = encoder.toByteArray();
+            stageLatency.observeSince(StageLatency.Stage.ENCODE, encodeStarted);
+            try {
+                // Encoding is done here so it overlaps with the network I/O of the senders
+                relpOutputStage.publish(
+                        new OutputEvent(
                                 uuid,
-                                appName.substring(0,30),
-                                namespace,
-                                podname,
-                                containerId
+                                syslog,
+                                pending,
+                                memoryBudget,
+                                reserved
                         )
                 );
-            }
-
-            if(LOGGER.isDebugEnabled()) {
-                LOGGER.debug(
-                        "[{}] Resolved message to be {}@{} from {}/{} generated at {}",
-                        uuid,
-                        appName,
-                        hostname,
-                        namespace,
-                        podname,
-                        timestamp
-                );
-            }
-
-            // Craft syslog message and structured-data
-            final SDElement sdOrigin = new SDElement("origin@48577");
-            sdOrigin.addSDParam("hostname", podMetadataContainer.getHost() + "/" + containerId);
-
-            final SDElement sdMetadata = new SDElement("kubernetesmeta@48577");
-            sdMetadata.addSDParam("kubernetes", kubernetesMetadata.toString());
-            sdMetadata.addSDParam("docker", dockerMetadata.toString());
-            sdMetadata.addSDParam("stream", log.getStream());
-
-            final SDElement sdEventNodeSource = new SDElement("event_node_source@48577");
-            sdEventNodeSource.addSDParam(sdRealHostname);
-            sdEventNodeSource.addSDParam("source", record.getPath());
-            sdEventNodeSource.addSDParam(sdSourceModule);
-
-            final SDElement sdEventId = new SDElement("event_id@48577");
-            sdEventId.addSDParam(sdRealHostname);
-            sdEventId.addSDParam("uuid", uuid.toString());
-            sdEventId.addSDParam("unixtime", String.valueOf(Instant.now().getEpochSecond()));
-            sdEventId.addSDParam(sdIdSource);
-
-            LOGGER.trace(
-                    "[{}] Kubernetes metadata: {}",
-                    uuid,
-                    kubernetesMetadata
-            );
-            LOGGER.trace(
-                    "[{}] Docker metadata: {}",
-                    uuid,
-                    dockerMetadata
-            );
-            SyslogMessage syslog = new SyslogMessage()
-                    .withTimestamp(timestamp, true)
-                    .withSeverity(Severity.WARNING)
-                    .withHostname(hostname)
-                    .withAppName(appName)
-                    .withFacility(Facility.USER)
-                    .withSDElement(sdAdditionalMetadata)
-                    .withSDElement(sdOrigin)
-                    .withSDElement(sdEventNodeSource)
-                    .withSDElement(sdEventId)
-                    .withSDElement(sdMetadata)
-                    .withMsg(log.getLog());
-            try {
-                RelpOutput output = relpOutputPool.take();
-                output.send(syslog);
-                relpOutputPool.put(output);
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
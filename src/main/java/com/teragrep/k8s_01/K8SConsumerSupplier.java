@@ -20,30 +20,64 @@ package com.teragrep.k8s_01;
 import com.teragrep.k8s_01.config.AppConfig;
 import com.teragrep.rlo_13.FileRecord;
 
-import java.util.concurrent.BlockingQueue;
+import java.time.ZoneId;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+/* Creates consumers sharing the per-file states and the per-thread event id and timestamp state */
 public class K8SConsumerSupplier implements Supplier<Consumer<FileRecord>> {
     private final AppConfig appConfig;
     private final KubernetesCachingAPIClient cacheClient;
-    private final BlockingQueue<RelpOutput> relpOutputPool;
+    private final RelpOutputStage relpOutputStage;
+    private final RateLimiter rateLimiter;
+    private final LogFileStates fileStates;
+    private final MemoryBudget memoryBudget;
+    private final EventIdGenerator eventIdGenerator;
+    private final ThreadLocal<TimestampCodec> timestampCodecs;
+    private final StageLatency stageLatency;
     private final String apiUrl;
 
     K8SConsumerSupplier(
             AppConfig appConfig,
             KubernetesCachingAPIClient cacheClient,
-            BlockingQueue<RelpOutput> relpOutputPool,
+            RelpOutputStage relpOutputStage,
+            RateLimiter rateLimiter,
+            AckCheckpointer checkpointer,
+            MemoryBudget memoryBudget,
+            StageLatency stageLatency,
             String apiUrl
     ) {
+        this.stageLatency = stageLatency;
         this.appConfig = appConfig;
         this.cacheClient = cacheClient;
-        this.relpOutputPool = relpOutputPool;
+        this.relpOutputStage = relpOutputStage;
+        this.rateLimiter = rateLimiter;
+        this.fileStates = new LogFileStates(checkpointer);
+        this.memoryBudget = memoryBudget;
         this.apiUrl = apiUrl;
+        if("random".equals(appConfig.getKubernetes().getEventIdGenerator())) {
+            this.eventIdGenerator = new RandomEventIdGenerator();
+        }
+        else {
+            this.eventIdGenerator = new TimeOrderedEventIdGenerator();
+        }
+        ZoneId timezoneId = ZoneId.of(appConfig.getKubernetes().getTimezone());
+        this.timestampCodecs = ThreadLocal.withInitial(() -> new TimestampCodec(timezoneId));
     }
 
     @Override
-    public Consumer<FileRecord> get() {
-        return new K8SConsumer(appConfig, cacheClient, relpOutputPool, apiUrl);
+    public K8SConsumer get() {
+        return new K8SConsumer(
+                appConfig,
+                cacheClient,
+                relpOutputStage,
+                rateLimiter,
+                fileStates,
+                memoryBudget,
+                eventIdGenerator,
+                timestampCodecs,
+                stageLatency,
+                apiUrl
+        );
     }
 }
@@ -16,7 +16,14 @@
 */
 
 package com.teragrep.k8s_01;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.cache.*;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.teragrep.k8s_01.config.AppConfigKubernetes;
 import com.teragrep.k8s_01.metadata.NamespaceMetadataContainer;
 import com.teragrep.k8s_01.metadata.PodMetadataContainer;
@@ -28,63 +35,294 @@ import io.kubernetes.client.util.Config;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.codahale.metrics.MetricRegistry.name;
 
 class KubernetesCachingAPIClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(KubernetesCachingAPIClient.class);
 
     private final CoreV1Api api;
-    private LoadingCache<HashMap<String, String>, PodMetadataContainer> podCache;
+    private LoadingCache<PodKey, PodMetadataContainer> podCache;
     private LoadingCache<String, NamespaceMetadataContainer> namespaceCache;
+    // Last known metadata of deleted objects, kept for a grace period so late lines can still be enriched
+    private final Cache<PodKey, PodMetadataContainer> podTombstones;
+    private final Cache<String, NamespaceMetadataContainer> namespaceTombstones;
+    // Placeholders for objects the API doesn't know about, so missing objects are not requested on every record
+    private final Cache<PodKey, PodMetadataContainer> podNegativeCache;
+    private final Cache<String, NamespaceMetadataContainer> namespaceNegativeCache;
     private final AppConfigKubernetes config;
+    private KubernetesMetadataWatcher watcher = null;
+    private final ExecutorService refreshExecutor;
+    private final MetricRegistry metricRegistry;
+    private final Timer loadLatency;
+    private final Counter refreshFailures;
+    private final Path snapshotPath;
+    private ScheduledExecutorService snapshotExecutor = null;
 
-    KubernetesCachingAPIClient(AppConfigKubernetes appConfigKubernetes, String apiUrl) throws IOException {
+    KubernetesCachingAPIClient(AppConfigKubernetes appConfigKubernetes, String apiUrl, MetricRegistry metricRegistry, Path statesStore) throws IOException {
+        this(appConfigKubernetes, apiUrl, inClusterClient(apiUrl), metricRegistry, statesStore);
+    }
+
+    // API client is given separately so the client can be pointed at any API server
+    KubernetesCachingAPIClient(AppConfigKubernetes appConfigKubernetes, String apiUrl, ApiClient client, MetricRegistry metricRegistry, Path statesStore) throws IOException {
         config = appConfigKubernetes;
+        this.metricRegistry = metricRegistry;
         LOGGER.info(
                 "Starting Caching API Client using {}",
                 apiUrl
         );
         LOGGER.info(
-                "Keeping up to {} cached entries for {} seconds before evicting.",
+                "Keeping up to {} cached entries, refreshing them in the background after {} seconds and evicting them after {} seconds without use.",
                 config.getCacheMaxEntries(),
-                config.getCacheExpireInterval()
+                config.getCacheExpireInterval(),
+                config.getCacheIdleExpireInterval()
         );
         LOGGER.info(
                 "Using {} as timezone for logfiles.",
                 config.getTimezone()
         );
+        api = new CoreV1Api(client);
+        refreshExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "MetadataRefresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info(
+                "Keeping metadata of deleted objects for {} seconds and remembering missing objects for {} seconds.",
+                config.getCacheTombstoneInterval(),
+                config.getCacheNegativeExpireInterval()
+        );
+        podTombstones = CacheBuilder
+                .newBuilder()
+                .expireAfterWrite(config.getCacheTombstoneInterval(), TimeUnit.SECONDS)
+                .maximumSize(config.getCacheMaxEntries())
+                .build();
+        namespaceTombstones = CacheBuilder
+                .newBuilder()
+                .expireAfterWrite(config.getCacheTombstoneInterval(), TimeUnit.SECONDS)
+                .maximumSize(config.getCacheMaxEntries())
+                .build();
+        podNegativeCache = CacheBuilder
+                .newBuilder()
+                .expireAfterWrite(config.getCacheNegativeExpireInterval(), TimeUnit.SECONDS)
+                .maximumSize(config.getCacheMaxEntries())
+                .build();
+        namespaceNegativeCache = CacheBuilder
+                .newBuilder()
+                .expireAfterWrite(config.getCacheNegativeExpireInterval(), TimeUnit.SECONDS)
+                .maximumSize(config.getCacheMaxEntries())
+                .build();
+        loadLatency = metricRegistry.timer(name("k8s01", "metadata", "load"));
+        refreshFailures = metricRegistry.counter(name("k8s01", "metadata", "refresh", "failures"));
+        buildPodLoader();
+        buildNamespaceLoader();
+        snapshotPath = statesStore.resolve("metadata-snapshot.json");
+        if(config.getSnapshot().getEnabled()) {
+            LOGGER.info(
+                    "Writing metadata snapshot to {} every {} seconds.",
+                    snapshotPath,
+                    config.getSnapshot().getInterval()
+            );
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MetadataSnapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            loadSnapshot();
+            snapshotExecutor.scheduleWithFixedDelay(
+                    this::writeSnapshot,
+                    config.getSnapshot().getInterval(),
+                    config.getSnapshot().getInterval(),
+                    TimeUnit.SECONDS
+            );
+        }
+
+        if(config.getWatch().getEnabled()) {
+            LOGGER.info(
+                    "Watching pods on node <[{}]> and all namespaces, using the API only for objects not seen by the watch.",
+                    config.getWatch().getNodeName()
+            );
+            ApiClient watchClient = Config.fromCluster();
+            watchClient.setBasePath(apiUrl);
+            // Watches are long-lived requests, the server decides when to end them
+            watchClient.setReadTimeout(0);
+            watcher = new KubernetesMetadataWatcher(
+                    watchClient,
+                    config.getWatch().getNodeName(),
+                    TimeUnit.SECONDS.toMillis(config.getWatch().getResyncInterval()),
+                    pod -> podTombstones.put(new PodKey(pod.getNamespaceName(), pod.getPodname()), pod),
+                    namespace -> namespaceTombstones.put(namespace.getName(), namespace)
+            );
+            watcher.start();
+        }
+    }
+
+    private static ApiClient inClusterClient(String apiUrl) throws IOException {
         try {
             ApiClient client = Config.fromCluster();
             client.setBasePath(apiUrl);
             Configuration.setDefaultApiClient(client);
-            api = new CoreV1Api();
+            return client;
         } catch (Exception e) {
             LOGGER.error("Encountered an error while initializing the API Client, refusing to continue.");
             throw e;
         }
-        buildPodLoader();
-        buildNamespaceLoader();
+    }
+
+    public void close() {
+        if(watcher != null) {
+            watcher.stop();
+        }
+        if(snapshotExecutor != null) {
+            snapshotExecutor.shutdownNow();
+            writeSnapshot();
+        }
+        refreshExecutor.shutdownNow();
+    }
+
+    // Entries from the snapshot are served right away and revalidated at random points during one expire interval
+    private void loadSnapshot() {
+        MetadataSnapshot snapshot = MetadataSnapshot.read(snapshotPath);
+        if(snapshot == null) {
+            return;
+        }
+        long age = System.currentTimeMillis() - snapshot.getCreated();
+        if(age > TimeUnit.SECONDS.toMillis(config.getSnapshot().getMaxAge())) {
+            LOGGER.info(
+                    "Ignoring metadata snapshot {} as it is {} seconds old",
+                    snapshotPath,
+                    TimeUnit.MILLISECONDS.toSeconds(age)
+            );
+            return;
+        }
+        long spread = TimeUnit.SECONDS.toMillis(config.getCacheExpireInterval());
+        List<PodMetadataContainer> pods = snapshot.getPods();
+        for(PodMetadataContainer pod : pods) {
+            PodKey key = new PodKey(pod.getNamespaceName(), pod.getPodname());
+            podCache.put(key, pod);
+            snapshotExecutor.schedule(() -> podCache.refresh(key), ThreadLocalRandom.current().nextLong(spread), TimeUnit.MILLISECONDS);
+        }
+        List<NamespaceMetadataContainer> namespaces = snapshot.getNamespaces();
+        for(NamespaceMetadataContainer namespace : namespaces) {
+            String key = namespace.getName();
+            namespaceCache.put(key, namespace);
+            snapshotExecutor.schedule(() -> namespaceCache.refresh(key), ThreadLocalRandom.current().nextLong(spread), TimeUnit.MILLISECONDS);
+        }
+        LOGGER.info(
+                "Loaded {} pods and {} namespaces from metadata snapshot {}",
+                pods.size(),
+                namespaces.size(),
+                snapshotPath
+        );
+    }
+
+    private void writeSnapshot() {
+        MetadataSnapshot snapshot = new MetadataSnapshot(
+                new ArrayList<>(podCache.asMap().values()),
+                new ArrayList<>(namespaceCache.asMap().values())
+        );
+        try {
+            snapshot.write(snapshotPath);
+            LOGGER.debug(
+                    "Wrote metadata snapshot {}",
+                    snapshotPath
+            );
+        }
+        catch (IOException e) {
+            LOGGER.warn(
+                    "Failed to write metadata snapshot {}: {}",
+                    snapshotPath,
+                    e.getMessage()
+            );
+        }
+    }
+
+    // Reloads in the background, the cache keeps serving the old value until the new one is available
+    private <K, V> ListenableFuture<V> reloadAsync(K key, V oldValue, Callable<V> fetcher, Cache<K, V> tombstones) {
+        ListenableFutureTask<V> task = ListenableFutureTask.create(() -> {
+            try {
+                return fetcher.call();
+            }
+            catch (ApiException e) {
+                if(e.getCode() != 404) {
+                    refreshFailures.inc();
+                    throw e;
+                }
+                // Object was deleted. The last known value is kept, the next refresh picks up an object recreated
+                // under the same name. Tombstones serve it once the entry has been evicted and the API still says 404.
+                LOGGER.debug(
+                        "{} no longer exists, keeping the last known value as a tombstone",
+                        key
+                );
+                tombstones.put(key, oldValue);
+                return oldValue;
+            }
+            catch (Exception e) {
+                refreshFailures.inc();
+                LOGGER.warn(
+                        "Failed to refresh {}, keeping the old value: {}",
+                        key,
+                        e.getMessage()
+                );
+                throw e;
+            }
+        });
+        refreshExecutor.execute(task);
+        return task;
+    }
+
+    private <V> V timed(Callable<V> fetcher) throws Exception {
+        Timer.Context context = loadLatency.time();
+        try {
+            return fetcher.call();
+        }
+        finally {
+            context.stop();
+        }
+    }
+
+    private void registerStats(String type, Cache<?, ?> cache) {
+        metricRegistry.register(name("k8s01", "metadata", type, "hits"), (Gauge<Long>) () -> cache.stats().hitCount());
+        metricRegistry.register(name("k8s01", "metadata", type, "misses"), (Gauge<Long>) () -> cache.stats().missCount());
+        metricRegistry.register(name("k8s01", "metadata", type, "size"), (Gauge<Long>) cache::size);
     }
 
     private void buildPodLoader() {
-        CacheLoader<HashMap<String, String>, PodMetadataContainer> podCacheLoader = new CacheLoader<HashMap<String, String>, PodMetadataContainer>() {
+        CacheLoader<PodKey, PodMetadataContainer> podCacheLoader = new CacheLoader<PodKey, PodMetadataContainer>() {
             @NotNull
             @Override
-            public PodMetadataContainer load(@NotNull HashMap<String, String> key) throws Exception {
+            public PodMetadataContainer load(@NotNull PodKey key) throws Exception {
                 LOGGER.debug(
                         "Cache miss for pod: {}",
                         key
                 );
-                return fetchPod(key.get("namespace"), key.get("id"));
+                return timed(() -> fetchPod(key.getNamespace(), key.getPodname()));
+            }
+
+            @Override
+            public ListenableFuture<PodMetadataContainer> reload(@NotNull PodKey key, @NotNull PodMetadataContainer oldValue) {
+                LOGGER.debug(
+                        "Refreshing pod: {}",
+                        key
+                );
+                return reloadAsync(key, oldValue, () -> timed(() -> fetchPod(key.getNamespace(), key.getPodname())), podTombstones);
             }
         };
 
-        RemovalListener<HashMap<String, String>, PodMetadataContainer> listener = removalNotification -> {
+        RemovalListener<PodKey, PodMetadataContainer> listener = removalNotification -> {
             if (removalNotification.wasEvicted()) {
                 if(LOGGER.isDebugEnabled()) {
                     LOGGER.debug(
@@ -97,22 +335,34 @@ class KubernetesCachingAPIClient {
         };
         podCache = CacheBuilder
                 .newBuilder()
-                .expireAfterWrite(config.getCacheExpireInterval(), TimeUnit.SECONDS)
+                .refreshAfterWrite(config.getCacheExpireInterval(), TimeUnit.SECONDS)
+                .expireAfterAccess(config.getCacheIdleExpireInterval(), TimeUnit.SECONDS)
                 .maximumSize(config.getCacheMaxEntries())
+                .recordStats()
                 .removalListener(listener)
                 .build(podCacheLoader);
+        registerStats("pods", podCache);
     }
 
     private void buildNamespaceLoader() {
         CacheLoader<String, NamespaceMetadataContainer> namespaceCacheLoader = new CacheLoader<String, NamespaceMetadataContainer>() {
             @NotNull
             @Override
-            public NamespaceMetadataContainer load(@NotNull String namespace) throws ApiException {
+            public NamespaceMetadataContainer load(@NotNull String namespace) throws Exception {
                 LOGGER.debug(
                         "Cache miss for namespace: {}",
                         namespace
                 );
-                return fetchNamespace(namespace);
+                return timed(() -> fetchNamespace(namespace));
+            }
+
+            @Override
+            public ListenableFuture<NamespaceMetadataContainer> reload(@NotNull String namespace, @NotNull NamespaceMetadataContainer oldValue) {
+                LOGGER.debug(
+                        "Refreshing namespace: {}",
+                        namespace
+                );
+                return reloadAsync(namespace, oldValue, () -> timed(() -> fetchNamespace(namespace)), namespaceTombstones);
             }
         };
 
@@ -129,21 +379,71 @@ class KubernetesCachingAPIClient {
         };
         namespaceCache = CacheBuilder
                 .newBuilder()
-                .expireAfterWrite(config.getCacheExpireInterval(), TimeUnit.SECONDS)
+                .refreshAfterWrite(config.getCacheExpireInterval(), TimeUnit.SECONDS)
+                .expireAfterAccess(config.getCacheIdleExpireInterval(), TimeUnit.SECONDS)
                 .maximumSize(config.getCacheMaxEntries())
+                .recordStats()
                 .removalListener(listener)
                 .build(namespaceCacheLoader);
+        registerStats("namespaces", namespaceCache);
     }
 
-    public PodMetadataContainer getPod(String namespace, String id) {
-        HashMap<String, String> map = new HashMap<>();
-        map.put("namespace", namespace);
-        map.put("id", id);
+    public PodMetadataContainer getPod(PodKey key) {
+        if(watcher != null) {
+            PodMetadataContainer pod = watcher.getPod(key);
+            if(pod != null) {
+                return pod;
+            }
+        }
         LOGGER.trace(
                 "Getting pod: {}",
-                map
+                key
+        );
+        return getOrPlaceholder(
+                key,
+                podCache,
+                podTombstones,
+                podNegativeCache,
+                () -> new PodMetadataContainer(key.getNamespace(), key.getPodname())
         );
-        return podCache.getUnchecked(map);
+    }
+
+    /**
+     * Serves objects from the cache, loading them from the API on a miss. Objects the API doesn't know about get the
+     * tombstone of a deleted object with the same name or a placeholder, remembered for a while so that the API is not
+     * called on every record. The API is always asked first, an object recreated under the same name is not shadowed.
+     */
+    private <K, V> V getOrPlaceholder(K key, LoadingCache<K, V> cache, Cache<K, V> tombstones, Cache<K, V> negativeCache, Supplier<V> placeholder) {
+        V value = negativeCache.getIfPresent(key);
+        if(value != null) {
+            return value;
+        }
+        try {
+            return cache.getUnchecked(key);
+        }
+        catch (UncheckedExecutionException e) {
+            if(!(e.getCause() instanceof ApiException) || ((ApiException) e.getCause()).getCode() != 404) {
+                throw e;
+            }
+            value = tombstones.getIfPresent(key);
+            if(value != null) {
+                LOGGER.debug(
+                        "{} was deleted, using its last known metadata for the next {} seconds",
+                        key,
+                        config.getCacheNegativeExpireInterval()
+                );
+            }
+            else {
+                LOGGER.warn(
+                        "{} was not found, using placeholder metadata for the next {} seconds",
+                        key,
+                        config.getCacheNegativeExpireInterval()
+                );
+                value = placeholder.get();
+            }
+            negativeCache.put(key, value);
+            return value;
+        }
     }
 
     private PodMetadataContainer fetchPod(String namespace, String id) throws ApiException {
@@ -159,7 +459,19 @@ class KubernetesCachingAPIClient {
                 "Getting namespace: {}",
                 namespace
         );
-        return namespaceCache.getUnchecked(namespace);
+        if(watcher != null) {
+            NamespaceMetadataContainer namespaceMetadataContainer = watcher.getNamespace(namespace);
+            if(namespaceMetadataContainer != null) {
+                return namespaceMetadataContainer;
+            }
+        }
+        return getOrPlaceholder(
+                namespace,
+                namespaceCache,
+                namespaceTombstones,
+                namespaceNegativeCache,
+                () -> new NamespaceMetadataContainer(namespace)
+        );
     }
 
     private NamespaceMetadataContainer fetchNamespace(String namespace) throws ApiException {
@@ -20,6 +20,7 @@ package com.teragrep.k8s_01;
 import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
 import com.teragrep.k8s_01.config.AppConfig;
+import com.teragrep.k8s_01.config.AppConfigRelpConnections;
 import com.teragrep.rlo_12.DirectoryEventWatcher;
 import com.teragrep.rlo_13.StatefulFileReader;
 import org.slf4j.Logger;
@@ -31,8 +32,6 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
@@ -100,40 +99,183 @@ public class KubernetesLogReader {
                     appConfig.getKubernetes().getLabels().getWhitelist().getLabel()
             );
         }
-        KubernetesCachingAPIClient cacheClient = new KubernetesCachingAPIClient(appConfig.getKubernetes(), apiUrl);
         PrometheusMetrics prometheusMetrics = new PrometheusMetrics(appConfig.getMetrics().getPort());
+        String statesStore = System.getProperty("user.dir") + "/var";
+        KubernetesCachingAPIClient cacheClient = new KubernetesCachingAPIClient(
+                appConfig.getKubernetes(),
+                apiUrl,
+                prometheusMetrics.getRegistry(),
+                Paths.get(statesStore)
+        );
 
-        // Pool of Relp output threads to be shared by every consumer
         int logFileCount = appConfig.getKubernetes().getLogfiles().length;
-        int outputThreads = appConfig.getKubernetes().getMaxLogReadingThreads() * logFileCount;
+        int readingThreads = appConfig.getKubernetes().getDispatcher().getReadingThreads();
+        int maxLogReadingThreads = appConfig.getKubernetes().getMaxLogReadingThreads();
+        int queueSize = appConfig.getRelp().getQueueSize();
+        AppConfigRelpConnections connections = appConfig.getRelp().getConnections();
+        Integer configuredMinConnections = connections.getMin();
+        Integer configuredMaxConnections = connections.getMax();
+        if(appConfig.getAutoTune().getEnabled()) {
+            ContainerResources resources = ContainerResources.detect();
+            AutoTuning tuning = new AutoTuning(resources, logFileCount, prometheusMetrics.getRegistry());
+            readingThreads = tuning.getReadingThreads();
+            maxLogReadingThreads = tuning.getMaxLogReadingThreads();
+            queueSize = tuning.getQueueSize();
+            configuredMinConnections = tuning.getMinConnections();
+            configuredMaxConnections = tuning.getMaxConnections();
+            LOGGER.info(
+                    "Auto-tuned for {} CPUs (cgroup quota {}) and {} bytes of memory (cgroup limit {}): {} reading threads, {} per logfile definition, {}-{} Relp connections, queue of {} events",
+                    tuning.getCpus(),
+                    resources.getCpuLimit() > 0 ? resources.getCpuLimit() : "none",
+                    tuning.getMemory(),
+                    resources.getMemoryLimit() > 0 ? resources.getMemoryLimit() : "none",
+                    readingThreads,
+                    maxLogReadingThreads,
+                    configuredMinConnections,
+                    configuredMaxConnections,
+                    queueSize
+            );
+        }
+
+        // Pool of Relp output threads to be shared by every consumer
+        int outputThreads;
+        if(appConfig.getKubernetes().getDispatcher().getEnabled()) {
+            outputThreads = readingThreads;
+            LOGGER.info(
+                    "Found {} monitored logfile definitions, reading them with a single watcher and {} shared threads.",
+                    logFileCount,
+                    outputThreads
+            );
+        }
+        else {
+            outputThreads = maxLogReadingThreads * logFileCount;
+            LOGGER.info(
+                    "Found {} monitored logfile definitions, reading them with maximum of {} threads each.",
+                    logFileCount,
+                    maxLogReadingThreads
+            );
+        }
+
+        // Relp connections default to one per reading thread unless the pool size is configured
+        int minConnections = outputThreads;
+        int maxConnections = outputThreads;
+        if(configuredMaxConnections != null) {
+            maxConnections = configuredMaxConnections;
+            minConnections = configuredMinConnections != null ? configuredMinConnections : 1;
+        }
         LOGGER.info(
-                "Found {} monitored logfile definitions, reading them with maximum of {} threads each.",
-                logFileCount,
-                appConfig.getKubernetes().getMaxLogReadingThreads()
+                "Starting {}-{} Relp threads towards {}, using tls: {}",
+                minConnections,
+                maxConnections,
+                Arrays.toString(appConfig.getRelp().getTargets()),
+                appConfig.getRelp().getTls().getEnabled()
         );
 
-        BlockingQueue<RelpOutput> relpOutputPool = new LinkedBlockingDeque<>(outputThreads);
+        // Senders poll the queue at least once per linger period so partially filled batches get committed
+        long pollInterval = 100;
+        if(appConfig.getRelp().getBatch().getEnabled()) {
+            LOGGER.info(
+                    "Batching Relp messages, committing every {} records, {} bytes or {}ms, whichever comes first.",
+                    appConfig.getRelp().getBatch().getMaxRecords(),
+                    appConfig.getRelp().getBatch().getMaxBytes(),
+                    appConfig.getRelp().getBatch().getMaxLinger()
+            );
+            pollInterval = appConfig.getRelp().getBatch().getMaxLinger();
+        }
         LOGGER.info(
-                "Starting {} Relp threads towards {}:{}, using tls: {}",
-                outputThreads,
-                appConfig.getRelp().getTarget(),
-                appConfig.getRelp().getPort(),
-                appConfig.getRelp().getTls().getEnabled()
+                "Queueing up to {} events for the Relp senders",
+                queueSize
         );
-        for(int i=1; i <= outputThreads; i++) {
-            try {
-                LOGGER.debug(
-                        "Adding RelpOutput thread #{}",
-                        i
-                );
-                relpOutputPool.put(new RelpOutput(appConfig.getRelp(), i, prometheusMetrics.getRegistry()));
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+        DiskSpool spool = null;
+        if(appConfig.getRelp().getSpool().getEnabled()) {
+            LOGGER.info(
+                    "Spooling events to {}/spool when the Relp senders can't keep up, using up to {} bytes and dropping {} events when full",
+                    statesStore,
+                    appConfig.getRelp().getSpool().getMaxBytes(),
+                    appConfig.getRelp().getSpool().getDropPolicy()
+            );
+            spool = new DiskSpool(Paths.get(statesStore, "spool"), appConfig.getRelp().getSpool(), prometheusMetrics.getRegistry());
+        }
+        StageLatency stageLatency = new StageLatency(prometheusMetrics.getCollectorRegistry());
+        RelpOutputStage relpOutputStage = new RelpOutputStage(
+                id -> new RelpOutput(appConfig.getRelp(), id, prometheusMetrics.getRegistry(), stageLatency),
+                minConnections,
+                maxConnections,
+                connections.getScaleInterval() * 1000L,
+                queueSize,
+                pollInterval,
+                spool,
+                prometheusMetrics.getRegistry(),
+                stageLatency
+        );
+        relpOutputStage.start();
+
+        RateLimiter rateLimiter = null;
+        if(appConfig.getKubernetes().getRateLimit().getEnabled()) {
+            LOGGER.info(
+                    "Rate limiting namespaces to {} and pods to {}, {} events over the limit",
+                    appConfig.getKubernetes().getRateLimit().getNamespace(),
+                    appConfig.getKubernetes().getRateLimit().getPod(),
+                    appConfig.getKubernetes().getRateLimit().getAction().equals("drop") ? "dropping" : "delaying"
+            );
+            rateLimiter = new RateLimiter(
+                    appConfig.getKubernetes().getRateLimit(),
+                    prometheusMetrics.getCollectorRegistry()
+            );
+        }
+
+        MemoryBudget memoryBudget = null;
+        if(appConfig.getMemoryBudget().getEnabled()) {
+            memoryBudget = new MemoryBudget(
+                    (long) (Runtime.getRuntime().maxMemory() * appConfig.getMemoryBudget().getHeapFraction()),
+                    prometheusMetrics.getRegistry()
+            );
+            LOGGER.info(
+                    "Limiting events in flight to {} bytes, {} of max heap",
+                    memoryBudget.getCapacity(),
+                    appConfig.getMemoryBudget().getHeapFraction()
+            );
+        }
+
+        if(appConfig.getKubernetes().getCheckpoint().getEnabled()) {
+            LOGGER.info(
+                    "Checkpointing acknowledged offsets to {} every {} seconds",
+                    statesStore,
+                    appConfig.getKubernetes().getCheckpoint().getInterval()
+            );
+        }
+        // Acknowledged offsets are tracked for checkpointing and for the lag metrics
+        AckCheckpointer checkpointer = appConfig.getKubernetes().getCheckpoint().getEnabled() || appConfig.getMetrics().getLag().getEnabled()
+                ? new AckCheckpointer(
+                        Paths.get(statesStore),
+                        appConfig.getKubernetes().getCheckpoint().getEnabled(),
+                        appConfig.getKubernetes().getCheckpoint().getInterval(),
+                        prometheusMetrics.getRegistry()
+                )
+                : null;
+        if(appConfig.getMetrics().getLag().getEnabled()) {
+            LOGGER.info(
+                    "Exporting ingestion lag for up to {} namespaces",
+                    appConfig.getMetrics().getLag().getMaxLabeledNamespaces()
+            );
+            new LagCollector(checkpointer, appConfig.getMetrics().getLag().getMaxLabeledNamespaces()).register(prometheusMetrics.getCollectorRegistry());
         }
 
         // consumer supplier, returns always the same instance
-        K8SConsumerSupplier consumerSupplier = new K8SConsumerSupplier(appConfig, cacheClient, relpOutputPool, apiUrl);
+        K8SConsumerSupplier consumerSupplier = new K8SConsumerSupplier(
+                appConfig,
+                cacheClient,
+                relpOutputStage,
+                rateLimiter,
+                checkpointer,
+                memoryBudget,
+                stageLatency,
+                apiUrl
+        );
+        if(appConfig.getKubernetes().getCheckpoint().getEnabled()) {
+            // Unacknowledged records are sent before the file reader continues from its own offsets
+            checkpointer.replay(consumerSupplier.get()::accept);
+        }
         String[] logfiles = appConfig.getKubernetes().getLogfiles();
         LOGGER.debug(
                 "Monitored logfiles: {}",
@@ -141,7 +283,6 @@ public class KubernetesLogReader {
         );
 
         List<DirectoryEventWatcher> dews = new ArrayList<>();
-        String statesStore = System.getProperty("user.dir") + "/var";
         LOGGER.debug(
                 "Using {} as statestore",
                 statesStore
@@ -164,48 +305,64 @@ public class KubernetesLogReader {
                     throw new RuntimeException(e);
                 }
             }
-            LOGGER.info(
-                    "Disconnecting {} relp threads",
-                    outputThreads
-            );
-            for(int i=1; i <= outputThreads; i++) {
-                LOGGER.debug(
-                        "Disconnecting relp thread #{}/{}",
-                        i,
-                        outputThreads
-                );
-                RelpOutput output;
-                try {
-                    output = relpOutputPool.take();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-                output.disconnect();
+            LOGGER.info("Disconnecting relp threads");
+            relpOutputStage.close();
+            if(checkpointer != null) {
+                checkpointer.close();
             }
             prometheusMetrics.close();
+            cacheClient.close();
             statefulFileReader.close();
             LOGGER.info("Goodbye");
         }, "ShutdownHook"));
 
-        // Start a new thread for all logfile watchers
-        for (String logfile : logfiles) {
+        if(appConfig.getKubernetes().getDispatcher().getEnabled()) {
+            // One watcher matches every file against all patterns at once and feeds a single pool of reading threads
+            StringBuilder combinedPattern = new StringBuilder();
+            for (String logfile : logfiles) {
+                if(combinedPattern.length() > 0) {
+                    combinedPattern.append('|');
+                }
+                combinedPattern.append("(?:").append(logfile).append(')');
+            }
             LOGGER.debug(
-                    "Starting new DirectoryEventWatcher on directory '{}' with pattern '{}'",
+                    "Starting a single DirectoryEventWatcher on directory '{}' with pattern '{}'",
                     appConfig.getKubernetes().getLogdir(),
-                    logfile
+                    combinedPattern
             );
             DirectoryEventWatcher dew = new DirectoryEventWatcher(
                     Paths.get(appConfig.getKubernetes().getLogdir()),
                     false,
-                    Pattern.compile(logfile),
+                    Pattern.compile(combinedPattern.toString()),
                     statefulFileReader,
                     500,
                     TimeUnit.MILLISECONDS,
-                    appConfig.getKubernetes().getMaxLogReadingThreads()
+                    readingThreads
             );
             dew.start();
             dews.add(dew);
         }
+        else {
+            // Start a new thread for all logfile watchers
+            for (String logfile : logfiles) {
+                LOGGER.debug(
+                        "Starting new DirectoryEventWatcher on directory '{}' with pattern '{}'",
+                        appConfig.getKubernetes().getLogdir(),
+                        logfile
+                );
+                DirectoryEventWatcher dew = new DirectoryEventWatcher(
+                        Paths.get(appConfig.getKubernetes().getLogdir()),
+                        false,
+                        Pattern.compile(logfile),
+                        statefulFileReader,
+                        500,
+                        TimeUnit.MILLISECONDS,
+                        maxLogReadingThreads
+                );
+                dew.start();
+                dews.add(dew);
+            }
+        }
         Thread.sleep(Long.MAX_VALUE);
     }
 }
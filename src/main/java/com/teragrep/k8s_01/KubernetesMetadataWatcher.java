@@ -0,0 +1,197 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.teragrep.k8s_01.metadata.NamespaceMetadataContainer;
+import com.teragrep.k8s_01.metadata.PodMetadataContainer;
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.informer.ResourceEventHandler;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1Namespace;
+import io.kubernetes.client.openapi.models.V1NamespaceList;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a local store of the pods scheduled on this node and of all namespaces, updated by list and watch so lookups
+ * never have to wait for the API server. The ApiClient is injected so this can be pointed at any API server.
+ */
+class KubernetesMetadataWatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(KubernetesMetadataWatcher.class);
+    private final SharedInformerFactory informerFactory;
+    private final SharedIndexInformer<V1Pod> podInformer;
+    private final SharedIndexInformer<V1Namespace> namespaceInformer;
+    private final Map<PodKey, PodMetadataContainer> pods = new ConcurrentHashMap<>();
+    private final Map<String, NamespaceMetadataContainer> namespaces = new ConcurrentHashMap<>();
+
+    KubernetesMetadataWatcher(
+            ApiClient apiClient,
+            String nodeName,
+            long resyncPeriodMillis,
+            Consumer<PodMetadataContainer> podDeleted,
+            Consumer<NamespaceMetadataContainer> namespaceDeleted
+    ) {
+        CoreV1Api api = new CoreV1Api(apiClient);
+        informerFactory = new SharedInformerFactory(apiClient);
+        String fieldSelector = "spec.nodeName=" + nodeName;
+        podInformer = informerFactory.sharedIndexInformerFor(
+                params -> api.listPodForAllNamespacesCall(
+                        null,
+                        null,
+                        fieldSelector,
+                        null,
+                        null,
+                        null,
+                        params.resourceVersion,
+                        null,
+                        params.timeoutSeconds,
+                        params.watch,
+                        null
+                ),
+                V1Pod.class,
+                V1PodList.class,
+                resyncPeriodMillis
+        );
+        podInformer.addEventHandler(
+                new StoreUpdater<>(
+                        pod -> pods.put(new PodKey(pod.getMetadata().getNamespace(), pod.getMetadata().getName()), new PodMetadataContainer(pod)),
+                        pod -> {
+                            PodMetadataContainer removed = pods.remove(new PodKey(pod.getMetadata().getNamespace(), pod.getMetadata().getName()));
+                            if(removed != null) {
+                                podDeleted.accept(removed);
+                            }
+                        }
+                )
+        );
+        namespaceInformer = informerFactory.sharedIndexInformerFor(
+                params -> api.listNamespaceCall(
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        params.resourceVersion,
+                        null,
+                        params.timeoutSeconds,
+                        params.watch,
+                        null
+                ),
+                V1Namespace.class,
+                V1NamespaceList.class,
+                resyncPeriodMillis
+        );
+        namespaceInformer.addEventHandler(
+                new StoreUpdater<>(
+                        namespace -> namespaces.put(namespace.getMetadata().getName(), new NamespaceMetadataContainer(namespace)),
+                        namespace -> {
+                            NamespaceMetadataContainer removed = namespaces.remove(namespace.getMetadata().getName());
+                            if(removed != null) {
+                                namespaceDeleted.accept(removed);
+                            }
+                        }
+                )
+        );
+    }
+
+    public void start() {
+        LOGGER.info("Starting pod and namespace watchers");
+        informerFactory.startAllRegisteredInformers();
+    }
+
+    public void stop() {
+        LOGGER.info("Stopping pod and namespace watchers");
+        informerFactory.stopAllRegisteredInformers();
+    }
+
+    public boolean hasSynced() {
+        return podInformer.hasSynced() && namespaceInformer.hasSynced();
+    }
+
+    // Returns null when the pod is not known (yet)
+    public PodMetadataContainer getPod(PodKey key) {
+        return pods.get(key);
+    }
+
+    // Returns null when the namespace is not known (yet)
+    public NamespaceMetadataContainer getNamespace(String namespace) {
+        return namespaces.get(namespace);
+    }
+
+    // Converts the watched objects into metadata containers once per change instead of once per lookup
+    private static class StoreUpdater<ApiType extends KubernetesObject> implements ResourceEventHandler<ApiType> {
+        private final Consumer<ApiType> updater;
+        private final Consumer<ApiType> remover;
+
+        StoreUpdater(Consumer<ApiType> updater, Consumer<ApiType> remover) {
+            this.updater = updater;
+            this.remover = remover;
+        }
+
+        @Override
+        public void onAdd(ApiType object) {
+            update(object);
+        }
+
+        @Override
+        public void onUpdate(ApiType oldObject, ApiType newObject) {
+            update(newObject);
+        }
+
+        @Override
+        public void onDelete(ApiType object, boolean deletedFinalStateUnknown) {
+            if(object.getMetadata() == null) {
+                return;
+            }
+            LOGGER.debug(
+                    "Watched {} {}/{} was deleted",
+                    object.getKind(),
+                    object.getMetadata().getNamespace(),
+                    object.getMetadata().getName()
+            );
+            remover.accept(object);
+        }
+
+        private void update(ApiType object) {
+            if(object.getMetadata() == null) {
+                return;
+            }
+            try {
+                updater.accept(object);
+            }
+            catch (RuntimeException e) {
+                LOGGER.warn(
+                        "Can't store watched {} {}/{}: ",
+                        object.getKind(),
+                        object.getMetadata().getNamespace(),
+                        object.getMetadata().getName(),
+                        e
+                );
+            }
+        }
+    }
+}
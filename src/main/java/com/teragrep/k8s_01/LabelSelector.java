@@ -0,0 +1,119 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.teragrep.k8s_01.config.AppConfigLabelSelector;
+import com.teragrep.k8s_01.config.AppConfigSelectorExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Label selector compiled from the configuration, evaluated with Kubernetes semantics: every requirement must match
+ * and missing labels count as empty. An empty selector matches everything.
+ */
+class LabelSelector {
+    private enum Operator {
+        IN,
+        NOT_IN,
+        EXISTS,
+        DOES_NOT_EXIST
+    }
+
+    private final Requirement[] requirements;
+
+    private LabelSelector(Requirement[] requirements) {
+        this.requirements = requirements;
+    }
+
+    static LabelSelector compile(AppConfigLabelSelector config) {
+        List<Requirement> requirements = new ArrayList<>();
+        for(Map.Entry<String, String> entry : config.getMatchLabels().entrySet()) {
+            requirements.add(new Requirement(entry.getKey(), Operator.IN, Collections.singleton(entry.getValue())));
+        }
+        for(AppConfigSelectorExpression expression : config.getMatchExpressions()) {
+            Operator operator;
+            switch (expression.getOperator()) {
+                case "In":
+                    operator = Operator.IN;
+                    break;
+                case "NotIn":
+                    operator = Operator.NOT_IN;
+                    break;
+                case "Exists":
+                    operator = Operator.EXISTS;
+                    break;
+                case "DoesNotExist":
+                    operator = Operator.DOES_NOT_EXIST;
+                    break;
+                default:
+                    // Rejected by the config validation already, an unknown operator must never select anything by accident
+                    throw new IllegalArgumentException("Unknown selector operator " + expression.getOperator());
+            }
+            requirements.add(new Requirement(expression.getKey(), operator, new HashSet<>(Arrays.asList(expression.getValues()))));
+        }
+        return new LabelSelector(requirements.toArray(new Requirement[0]));
+    }
+
+    boolean isEmpty() {
+        return requirements.length == 0;
+    }
+
+    boolean matches(Map<String, String> labels) {
+        if(labels == null) {
+            labels = Collections.emptyMap();
+        }
+        for(Requirement requirement : requirements) {
+            if(!requirement.matches(labels)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Requirement {
+        private final String key;
+        private final Operator operator;
+        private final Set<String> values;
+
+        private Requirement(String key, Operator operator, Set<String> values) {
+            this.key = key;
+            this.operator = operator;
+            this.values = values;
+        }
+
+        private boolean matches(Map<String, String> labels) {
+            String value = labels.get(key);
+            switch (operator) {
+                case IN:
+                    return value != null && values.contains(value);
+                case NOT_IN:
+                    return value == null || !values.contains(value);
+                case EXISTS:
+                    return labels.containsKey(key);
+                default:
+                    return !labels.containsKey(key);
+            }
+        }
+    }
+}
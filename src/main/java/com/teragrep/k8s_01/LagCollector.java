@@ -0,0 +1,72 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ingestion lag of the tracked log files, aggregated per namespace when scraped. Event lag is the largest lag of the
+ * files in the namespace, byte lag is the sum of bytes read but not acknowledged. Namespaces over the label limit are
+ * reported together as "other".
+ */
+class LagCollector extends Collector {
+    private final AckCheckpointer checkpointer;
+    private final BoundedLabelValues namespaceLabels;
+
+    LagCollector(AckCheckpointer checkpointer, int maxLabeledNamespaces) {
+        this.checkpointer = checkpointer;
+        this.namespaceLabels = new BoundedLabelValues(maxLabeledNamespaces);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        long now = System.currentTimeMillis();
+        Map<String, long[]> lags = new HashMap<>();
+        for(FileCheckpoint checkpoint : checkpointer.getCheckpoints()) {
+            long[] lag = lags.computeIfAbsent(namespaceLabels.get(checkpoint.getNamespace()), key -> new long[2]);
+            lag[0] = Math.max(lag[0], checkpoint.getEventLag(now));
+            lag[1] += checkpoint.getReadOffset() - checkpoint.getAcknowledgedOffset();
+        }
+        GaugeMetricFamily eventLag = new GaugeMetricFamily(
+                "k8s01_lag_event_seconds",
+                "Wall clock minus the timestamp of the last acknowledged event, largest of the files in the namespace",
+                Collections.singletonList("namespace")
+        );
+        GaugeMetricFamily byteLag = new GaugeMetricFamily(
+                "k8s01_lag_bytes",
+                "Bytes read from the files of the namespace but not yet acknowledged",
+                Collections.singletonList("namespace")
+        );
+        for(Map.Entry<String, long[]> entry : lags.entrySet()) {
+            List<String> labels = Collections.singletonList(entry.getKey());
+            eventLag.addMetric(labels, entry.getValue()[0] / 1000.0);
+            byteLag.addMetric(labels, entry.getValue()[1]);
+        }
+        List<MetricFamilySamples> samples = new ArrayList<>();
+        samples.add(eventLag);
+        samples.add(byteLag);
+        return samples;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+/* Everything that can be known about a container from its log filename, parsed once per file */
+class LogFileDescriptor {
+    private final String namespace;
+    private final String podname;
+    private final String containerName;
+    private final String containerId;
+    private final PodKey podKey;
+
+    LogFileDescriptor(String filename) {
+        namespace = ContainerInfo.getNamespace(filename);
+        podname = ContainerInfo.getPodname(filename);
+        containerName = ContainerInfo.getContainerName(filename);
+        containerId = ContainerInfo.getContainerID(filename);
+        podKey = new PodKey(namespace, podname);
+    }
+
+    String getNamespace() {
+        return namespace;
+    }
+
+    String getPodname() {
+        return podname;
+    }
+
+    String getContainerName() {
+        return containerName;
+    }
+
+    String getContainerId() {
+        return containerId;
+    }
+
+    PodKey getPodKey() {
+        return podKey;
+    }
+}
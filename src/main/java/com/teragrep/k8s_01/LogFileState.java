@@ -0,0 +1,160 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.teragrep.k8s_01.metadata.NamespaceMetadataContainer;
+import com.teragrep.k8s_01.metadata.PodMetadataContainer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/* Per file state: parsed filename, detected log format, acknowledgement checkpoint and partial lines waiting for their final fragment, one per stream */
+class LogFileState {
+    enum Format {
+        DOCKER,
+        CRI
+    }
+
+    private final LogFileDescriptor descriptor;
+    private final Format format;
+    private final FileCheckpoint checkpoint;
+    private final Map<String, PartialLine> partialLines = new HashMap<>();
+    private volatile CollectDecision collectDecision = null;
+
+    LogFileState(LogFileDescriptor descriptor, Format format, FileCheckpoint checkpoint) {
+        this.descriptor = descriptor;
+        this.format = format;
+        this.checkpoint = checkpoint;
+    }
+
+    // Docker json-file lines are JSON objects, CRI lines start with a timestamp
+    static Format detect(byte[] firstRecord) {
+        if(firstRecord.length > 0 && firstRecord[0] == '{') {
+            return Format.DOCKER;
+        }
+        return Format.CRI;
+    }
+
+    LogFileDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    Format getFormat() {
+        return format;
+    }
+
+    // Null when acknowledgement checkpointing is disabled
+    FileCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    // Decision is cached per metadata instances, refreshed metadata with possibly changed labels is evaluated again
+    boolean isCollected(
+            PodMetadataContainer pod,
+            NamespaceMetadataContainer namespace,
+            BiPredicate<PodMetadataContainer, NamespaceMetadataContainer> filter
+    ) {
+        CollectDecision decision = collectDecision;
+        if(decision == null || decision.pod != pod || decision.namespace != namespace) {
+            decision = new CollectDecision(pod, namespace, filter.test(pod, namespace));
+            collectDecision = decision;
+        }
+        return decision.collected;
+    }
+
+    boolean hasPartialLine(String stream) {
+        synchronized (partialLines) {
+            return partialLines.containsKey(stream);
+        }
+    }
+
+    /**
+     * Appends a fragment to the partial line of the stream. Returns the assembled line when the fragment was the final one
+     * or when the line has grown to maxBytes, otherwise null while waiting for more fragments.
+     */
+    PartialLine append(String stream, String timestamp, byte[] bytes, int offset, int length, boolean partial, int maxBytes) {
+        synchronized (partialLines) {
+            PartialLine partialLine = partialLines.get(stream);
+            if(partialLine == null) {
+                partialLine = new PartialLine(timestamp);
+                partialLines.put(stream, partialLine);
+            }
+            partialLine.append(bytes, offset, length);
+            if(partial && partialLine.getLength() < maxBytes) {
+                return null;
+            }
+            partialLines.remove(stream);
+            return partialLine;
+        }
+    }
+
+    // Partial lines that will never be completed, the fragments held for them are released from the checkpoint
+    void abandonPartialLines() {
+        synchronized (partialLines) {
+            partialLines.clear();
+            if(checkpoint != null) {
+                checkpoint.release();
+            }
+        }
+    }
+
+    private static final class CollectDecision {
+        private final PodMetadataContainer pod;
+        private final NamespaceMetadataContainer namespace;
+        private final boolean collected;
+
+        private CollectDecision(PodMetadataContainer pod, NamespaceMetadataContainer namespace, boolean collected) {
+            this.pod = pod;
+            this.namespace = namespace;
+            this.collected = collected;
+        }
+    }
+
+    /* Fragments of a line, the assembled line uses the timestamp of the first fragment */
+    static final class PartialLine {
+        private final String timestamp;
+        private byte[] bytes = new byte[16 * 1024];
+        private int length = 0;
+
+        private PartialLine(String timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        private void append(byte[] source, int offset, int count) {
+            if(bytes.length - length < count) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        String getTimestamp() {
+            return timestamp;
+        }
+
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        int getLength() {
+            return length;
+        }
+    }
+}
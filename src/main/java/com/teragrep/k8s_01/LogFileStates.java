@@ -0,0 +1,83 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/* Per file states shared by every consumer, so partial lines and checkpoints survive records of a file being handled by another consumer */
+class LogFileStates {
+    private final AckCheckpointer checkpointer;
+    // Files that are no longer written to are forgotten, along with their unfinished partial lines and the fragments held for them
+    private final Cache<String, LogFileState> fileStates;
+
+    // Checkpointer is null when acknowledgement checkpointing is disabled
+    LogFileStates(AckCheckpointer checkpointer) {
+        this(checkpointer, Ticker.systemTicker());
+    }
+
+    // Ticker drives the expiry, replaced in tests
+    LogFileStates(AckCheckpointer checkpointer, Ticker ticker) {
+        this.checkpointer = checkpointer;
+        RemovalListener<String, LogFileState> listener = removalNotification -> removalNotification.getValue().abandonPartialLines();
+        this.fileStates = CacheBuilder
+                .newBuilder()
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .ticker(ticker)
+                .removalListener(listener)
+                .build();
+    }
+
+    /**
+     * Filename is parsed and format is detected from the first record read from the file. A file rotated under the same
+     * name starts over with a new state and checkpoint, nothing of the previous file carries over.
+     */
+    LogFileState get(String path, String filename, byte[] record, long startOffset) {
+        String key = path + "/" + filename;
+        LogFileState fileState = load(key, path, filename, record, startOffset);
+        FileCheckpoint checkpoint = fileState.getCheckpoint();
+        if(checkpoint != null && checkpoint.isRotated(startOffset)) {
+            fileStates.asMap().remove(key, fileState);
+            fileState = load(key, path, filename, record, startOffset);
+        }
+        return fileState;
+    }
+
+    private LogFileState load(String key, String path, String filename, byte[] record, long startOffset) {
+        try {
+            return fileStates.get(
+                    key,
+                    () -> {
+                        LogFileDescriptor descriptor = new LogFileDescriptor(filename);
+                        return new LogFileState(
+                                descriptor,
+                                LogFileState.detect(record),
+                                checkpointer == null ? null : checkpointer.get(path, filename, descriptor.getNamespace(), startOffset)
+                        );
+                    }
+            );
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+/**
+ * Decodes a single line of a container log file. Message bytes are only valid until the next call to parse().
+ * Not thread-safe, use one instance per thread.
+ */
+interface LogLineDecoder {
+    // Throws IllegalArgumentException if the line is not in the expected format
+    void parse(byte[] line);
+
+    String getTimestamp();
+
+    String getStream();
+
+    boolean hasMessage();
+
+    byte[] getMessageBytes();
+
+    int getMessageOffset();
+
+    int getMessageLength();
+
+    // Partial lines are fragments of a longer line that continues in the next record
+    boolean isPartial();
+}
@@ -0,0 +1,68 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.Semaphore;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Global limit of bytes held in flight, from reading a record until the Relp target has acknowledged it. Readers block
+ * when the budget is used up, so memory use stays flat when the outputs can't keep up.
+ * Must be thread-safe
+ */
+public class MemoryBudget {
+    private final Semaphore permits;
+    private final int capacity;
+    private final Meter waits;
+
+    MemoryBudget(long bytes, MetricRegistry metricRegistry) {
+        this.capacity = (int) Math.max(1, Math.min(bytes, Integer.MAX_VALUE));
+        this.permits = new Semaphore(capacity);
+        this.waits = metricRegistry.meter(name("k8s01", "memory", "budget", "waits"));
+        metricRegistry.register(name("k8s01", "memory", "budget", "capacity"), (Gauge<Integer>) () -> capacity);
+        metricRegistry.register(name("k8s01", "memory", "budget", "used"), (Gauge<Integer>) () -> capacity - permits.availablePermits());
+    }
+
+    /**
+     * Reserves bytes from the budget, blocking until they are available. Returns the amount actually reserved which is
+     * capped to the whole budget so a single oversized record can always proceed once everything else is released.
+     */
+    int acquire(int bytes) throws InterruptedException {
+        int reserved = Math.max(1, Math.min(bytes, capacity));
+        if(!permits.tryAcquire(reserved)) {
+            waits.mark();
+            permits.acquire(reserved);
+        }
+        return reserved;
+    }
+
+    void release(int reserved) {
+        if(reserved > 0) {
+            permits.release(reserved);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.metadata.NamespaceMetadataContainer;
+import com.teragrep.k8s_01.metadata.PodMetadataContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Compact copy of the cached pod and namespace metadata, persisted so restarts don't start with empty caches */
+class MetadataSnapshot {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataSnapshot.class);
+    private static final int VERSION = 1;
+
+    private final int version;
+    private final long created;
+    private final List<PodMetadataContainer> pods;
+    private final List<NamespaceMetadataContainer> namespaces;
+
+    MetadataSnapshot(List<PodMetadataContainer> pods, List<NamespaceMetadataContainer> namespaces) {
+        this.version = VERSION;
+        this.created = System.currentTimeMillis();
+        this.pods = pods;
+        this.namespaces = namespaces;
+    }
+
+    long getCreated() {
+        return created;
+    }
+
+    List<PodMetadataContainer> getPods() {
+        List<PodMetadataContainer> restored = new ArrayList<>(pods.size());
+        for(PodMetadataContainer pod : pods) {
+            restored.add(new PodMetadataContainer(pod));
+        }
+        return restored;
+    }
+
+    List<NamespaceMetadataContainer> getNamespaces() {
+        return namespaces;
+    }
+
+    // Written to a temporary file first so a crash mid-write never leaves a truncated snapshot behind
+    void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try(Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            new Gson().toJson(this, writer);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns null when there is no usable snapshot, the caches are then filled from the API as usual
+    static MetadataSnapshot read(Path path) {
+        if(!Files.exists(path)) {
+            return null;
+        }
+        try(Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            MetadataSnapshot snapshot = new Gson().fromJson(reader, MetadataSnapshot.class);
+            if(snapshot == null || snapshot.version != VERSION || snapshot.pods == null || snapshot.namespaces == null) {
+                LOGGER.warn(
+                        "Ignoring metadata snapshot {} with unknown format",
+                        path
+                );
+                return null;
+            }
+            return snapshot;
+        }
+        catch (Exception e) {
+            LOGGER.warn(
+                    "Ignoring unreadable metadata snapshot {}: {}",
+                    path,
+                    e.getMessage()
+            );
+            return null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+/* Encoded syslog message waiting to be sent by the output stage */
+public class OutputEvent {
+    private final String id;
+    private final byte[] payload;
+    private final FileCheckpoint.Pending pending;
+    private final MemoryBudget memoryBudget;
+    private final int reserved;
+    private final DiskSpool.Record spooled;
+    private final long created = System.nanoTime();
+
+    OutputEvent(String id, byte[] payload, FileCheckpoint.Pending pending, MemoryBudget memoryBudget, int reserved) {
+        this.id = id;
+        this.payload = payload;
+        this.pending = pending;
+        this.memoryBudget = memoryBudget;
+        this.reserved = reserved;
+        this.spooled = null;
+    }
+
+    // Event replayed from the spool
+    OutputEvent(DiskSpool.Record spooled) {
+        this.id = spooled.getId();
+        this.payload = spooled.getPayload();
+        this.pending = null;
+        this.memoryBudget = null;
+        this.reserved = 0;
+        this.spooled = spooled;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    // Replayed events stay in the spool until they are acknowledged
+    public boolean isSpooled() {
+        return spooled != null;
+    }
+
+    // Nanotime of creation, used for measuring the time spent waiting for a sender
+    public long getCreated() {
+        return created;
+    }
+
+    // Moves the checkpoint of the source file, frees the memory budget or removes a replayed event from the spool once the event is safely stored by a Relp target or the spool
+    public void acknowledge() {
+        if(pending != null) {
+            pending.acknowledge();
+        }
+        if(memoryBudget != null) {
+            memoryBudget.release(reserved);
+        }
+        if(spooled != null) {
+            spooled.acknowledge();
+        }
+    }
+}
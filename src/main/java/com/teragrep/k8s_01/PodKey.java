@@ -0,0 +1,61 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+/* Cache key of a pod, namespace and name never change so the hash is computed once */
+final class PodKey {
+    private final String namespace;
+    private final String podname;
+    private final int hash;
+
+    PodKey(String namespace, String podname) {
+        this.namespace = namespace;
+        this.podname = podname;
+        this.hash = 31 * namespace.hashCode() + podname.hashCode();
+    }
+
+    String getNamespace() {
+        return namespace;
+    }
+
+    String getPodname() {
+        return podname;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof PodKey)) {
+            return false;
+        }
+        PodKey other = (PodKey) o;
+        return hash == other.hash && namespace.equals(other.namespace) && podname.equals(other.podname);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return namespace + "/" + podname;
+    }
+}
@@ -37,6 +37,8 @@ public class PrometheusMetrics {
     private final Server jettyServer;
     private final JmxReporter jmxReporter;
     private final MetricRegistry metricRegistry = new MetricRegistry();
+    // Native Prometheus collectors such as histograms, exported along with the Dropwizard metrics
+    private final CollectorRegistry collectorRegistry = new CollectorRegistry(true);
     public PrometheusMetrics(int port) {
         LOGGER.info("Starting prometheus metrics server on port {}", port);
 
@@ -46,7 +48,7 @@ public class PrometheusMetrics {
         context.setContextPath("/");
         jettyServer.setHandler(context);
 
-        MetricsServlet metricsServlet = new MetricsServlet();
+        MetricsServlet metricsServlet = new MetricsServlet(collectorRegistry);
         ServletHolder servletHolder = new ServletHolder(metricsServlet);
         context.addServlet(servletHolder, "/metrics");
 
@@ -68,7 +70,7 @@ public class PrometheusMetrics {
         SharedMetricRegistries.add("default", metricRegistry);
 
         // Add to Prometheus metrics
-        CollectorRegistry.defaultRegistry.register(
+        collectorRegistry.register(
                 new DropwizardExports(metricRegistry)
         );
 
@@ -77,7 +79,7 @@ public class PrometheusMetrics {
         jmxReporter.start();
 
         // Add metrics about CPU, JVM memory etc.
-        DefaultExports.initialize();
+        DefaultExports.register(collectorRegistry);
 
         // Start the webserver.
         try {
@@ -91,6 +93,10 @@ public class PrometheusMetrics {
         return metricRegistry;
     }
 
+    public CollectorRegistry getCollectorRegistry() {
+        return collectorRegistry;
+    }
+
     public void close() {
         try {
             LOGGER.info("Closing jettyserver");
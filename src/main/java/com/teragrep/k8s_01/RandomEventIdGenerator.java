@@ -16,27 +16,13 @@
 */
 
 package com.teragrep.k8s_01;
-import com.google.gson.Gson;
 
-public class KubernetesLogFilePOJO {
-    private String log;
-    private String stream;
-    private String time;
-
-    public String getLog() {
-        return log;
-    }
-
-    public String getStream() {
-        return stream;
-    }
-
-    public String getTimestamp() {
-        return time;
-    }
+import java.util.UUID;
 
+/* Random version 4 UUIDs, all threads share the same SecureRandom */
+class RandomEventIdGenerator implements EventIdGenerator {
     @Override
-    public String toString() {
-        return new Gson().toJson(this);
+    public String next() {
+        return UUID.randomUUID().toString();
     }
 }
@@ -0,0 +1,173 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.teragrep.k8s_01.config.AppConfigRateLimit;
+import com.teragrep.k8s_01.config.AppConfigRateLimitBucket;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second and bytes per second limits per namespace and per pod, shared by all consumers.
+ * Over the limit records are either delayed, which slows down reading the file, or dropped. Drops are counted per
+ * pod so they can be reported with a summary event once the pod is under the limit again.
+ */
+class RateLimiter {
+    private final Counter limited;
+    private final Counter limitedBytes;
+    private final boolean drop;
+    private final String action;
+    private final AppConfigRateLimitBucket namespaceConfig;
+    private final AppConfigRateLimitBucket podConfig;
+    private final BoundedLabelValues namespaceLabels;
+    // Limits of namespaces and pods without traffic are forgotten
+    private final Cache<String, Limits> namespaces = CacheBuilder
+            .newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+    private final Cache<PodKey, Limits> pods = CacheBuilder
+            .newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    RateLimiter(AppConfigRateLimit config, CollectorRegistry collectorRegistry) {
+        this.limited = Counter
+                .build()
+                .name("k8s01_ratelimit_events_total")
+                .help("Events delayed or dropped by rate limits")
+                .labelNames("namespace", "limit", "action")
+                .register(collectorRegistry);
+        this.limitedBytes = Counter
+                .build()
+                .name("k8s01_ratelimit_bytes_total")
+                .help("Bytes delayed or dropped by rate limits")
+                .labelNames("namespace", "limit", "action")
+                .register(collectorRegistry);
+        this.action = config.getAction();
+        this.drop = action.equals("drop");
+        this.namespaceConfig = config.getNamespace();
+        this.podConfig = config.getPod();
+        this.namespaceLabels = new BoundedLabelValues(config.getMaxLabeledNamespaces());
+    }
+
+    // Returns false if the record has to be dropped, blocks while the record is delayed
+    boolean acquire(PodKey pod, long bytes) throws InterruptedException {
+        Limits namespaceLimits = get(namespaces, pod.getNamespace(), namespaceConfig);
+        Limits podLimits = get(pods, pod, podConfig);
+        if(drop) {
+            if(!namespaceLimits.tryAcquire(bytes)) {
+                podLimits.dropped(bytes);
+                count(pod, "namespace", bytes);
+                return false;
+            }
+            if(!podLimits.tryAcquire(bytes)) {
+                namespaceLimits.release(bytes);
+                podLimits.dropped(bytes);
+                count(pod, "pod", bytes);
+                return false;
+            }
+            return true;
+        }
+        long namespaceWait = namespaceLimits.reserve(bytes);
+        long podWait = podLimits.reserve(bytes);
+        long wait = Math.max(namespaceWait, podWait);
+        if(wait > 0) {
+            count(pod, namespaceWait >= podWait ? "namespace" : "pod", bytes);
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return true;
+    }
+
+    /**
+     * Returns events and bytes dropped from the pod since the previous call, or null if nothing was dropped.
+     */
+    long[] takeDropped(PodKey pod) {
+        Limits podLimits = pods.getIfPresent(pod);
+        if(podLimits == null) {
+            return null;
+        }
+        return podLimits.takeDropped();
+    }
+
+    private void count(PodKey pod, String limit, long bytes) {
+        String namespace = namespaceLabels.get(pod.getNamespace());
+        limited.labels(namespace, limit, action).inc();
+        limitedBytes.labels(namespace, limit, action).inc(bytes);
+    }
+
+    private static <K> Limits get(Cache<K, Limits> cache, K key, AppConfigRateLimitBucket config) {
+        try {
+            return cache.get(key, () -> new Limits(config));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class Limits {
+        private final TokenBucket events;
+        private final TokenBucket bytes;
+        // Guarded by this, events and bytes are taken together
+        private long droppedEvents = 0;
+        private long droppedBytes = 0;
+
+        private Limits(AppConfigRateLimitBucket config) {
+            events = new TokenBucket(config.getEventsPerSecond(), config.getBurstSeconds());
+            bytes = new TokenBucket(config.getBytesPerSecond(), config.getBurstSeconds());
+        }
+
+        private boolean tryAcquire(long size) {
+            if(!events.tryAcquire(1)) {
+                return false;
+            }
+            if(!bytes.tryAcquire(size)) {
+                events.release(1);
+                return false;
+            }
+            return true;
+        }
+
+        private void release(long size) {
+            events.release(1);
+            bytes.release(size);
+        }
+
+        private long reserve(long size) {
+            return Math.max(events.reserve(1), bytes.reserve(size));
+        }
+
+        private synchronized void dropped(long size) {
+            droppedEvents++;
+            droppedBytes += size;
+        }
+
+        private synchronized long[] takeDropped() {
+            if(droppedEvents == 0) {
+                return null;
+            }
+            long[] dropped = new long[] {droppedEvents, droppedBytes};
+            droppedEvents = 0;
+            droppedBytes = 0;
+            return dropped;
+        }
+    }
+}
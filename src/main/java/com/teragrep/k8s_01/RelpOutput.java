@@ -17,9 +17,9 @@
 
 package com.teragrep.k8s_01;
 
-import com.teragrep.rlo_14.SyslogMessage;
 import com.codahale.metrics.*;
 import com.teragrep.k8s_01.config.AppConfigRelp;
+import com.teragrep.k8s_01.config.AppConfigRelpTarget;
 import com.teragrep.rlp_01.RelpBatch;
 import com.teragrep.rlp_01.RelpConnection;
 import com.teragrep.rlp_01.SSLContextFactory;
@@ -32,6 +32,9 @@ import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
@@ -42,14 +45,29 @@ public class RelpOutput {
     private final RelpConnection relpConnection;
     private final AppConfigRelp relpConfig;
     private final int id;
+    private final AppConfigRelpTarget[] targets;
+    private int targetIndex;
     private final Counter totalReconnects;
     private final Counter totalConnections;
     private final Meter throughputBytes;
     private final Meter throughputRecords;
     private final Meter throughputErrors;
-    RelpOutput(AppConfigRelp appConfigRelp, int threadId, MetricRegistry metricRegistry) {
+    private final StageLatency stageLatency;
+    private RelpBatch batch = new RelpBatch();
+    private final List<OutputEvent> pendingEvents = new ArrayList<>(); // Acknowledged once the whole batch is verified
+    private volatile int pendingRecords = 0; // Frames not yet acknowledged by the target
+    private long pendingBytes = 0;
+    private long batchStarted;
+    private volatile boolean connected = false;
+    private volatile boolean running = true;
+    private final Object stopped = new Object(); // Wakes up a reconnect wait when stopping
+    RelpOutput(AppConfigRelp appConfigRelp, int threadId, MetricRegistry metricRegistry, StageLatency stageLatency) {
+        this.stageLatency = stageLatency;
         relpConfig = appConfigRelp;
         id = threadId;
+        // Spread the outputs evenly over the targets
+        targets = relpConfig.getTargets();
+        targetIndex = (threadId - 1) % targets.length;
         if(LOGGER.isDebugEnabled()) {
             LOGGER.debug(
                     "[#{}] Started Relp thread #{}",
@@ -110,22 +128,23 @@ public class RelpOutput {
         // Totals
         totalConnections = metricRegistry.counter(name("k8s01", "total", "connections"));
         totalReconnects = metricRegistry.counter(name("k8s01", "total", "reconnects"));
-        connect();
     }
 
-    private void connect() {
-        boolean connected = false;
-        while (!connected) {
+    // Called by the sender thread so connections are established in parallel. Returns false if stopped before connecting.
+    boolean connect() {
+        int failedTargets = 0;
+        while (!connected && running) {
+            AppConfigRelpTarget target = targets[targetIndex];
             try {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug(
                             "[#{}] Connecting to {}:{}",
                             getId(),
-                            relpConfig.getTarget(),
-                            relpConfig.getPort()
+                            target.getTarget(),
+                            target.getPort()
                     );
                 }
-                connected = relpConnection.connect(relpConfig.getTarget(), relpConfig.getPort());
+                connected = relpConnection.connect(target.getTarget(), target.getPort());
                 totalConnections.inc();
             } catch(ClosedChannelException e) {
                 LOGGER.error(
@@ -160,7 +179,22 @@ public class RelpOutput {
                 throughputErrors.mark();
                 totalConnections.dec();
             }
-            if (!connected) {
+            if (!connected && targets.length > 1) {
+                // Fail over to the next target, waiting only after every target has been tried
+                targetIndex = (targetIndex + 1) % targets.length;
+                failedTargets++;
+                LOGGER.info(
+                        "[#{}] Failing over from {} to {}",
+                        getId(),
+                        target,
+                        targets[targetIndex]
+                );
+                if(failedTargets % targets.length != 0) {
+                    totalReconnects.inc();
+                    continue;
+                }
+            }
+            if (!connected && running) {
                 totalReconnects.inc();
                 try {
                     LOGGER.info(
@@ -168,7 +202,11 @@ public class RelpOutput {
                             getId(),
                             relpConfig.getReconnectInterval()
                     );
-                    Thread.sleep(relpConfig.getReconnectInterval());
+                    synchronized (stopped) {
+                        if(running) {
+                            stopped.wait(relpConfig.getReconnectInterval());
+                        }
+                    }
                 } catch (InterruptedException e) {
                     LOGGER.error(
                             "[#{}] Sleep was interrupted",
@@ -179,13 +217,35 @@ public class RelpOutput {
                 }
             }
         }
+        return connected;
     }
 
-    public void disconnect() {
+    // Reconnecting and retrying give up from now on, a working connection still commits what it is given
+    void stop() {
+        running = false;
+        synchronized (stopped) {
+            stopped.notifyAll();
+        }
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    public synchronized void disconnect() {
         LOGGER.debug(
                 "[#{}] Disconnecting",
                 getId()
         );
+        if(!connected) {
+            return;
+        }
+        flush();
+        if(!connected) {
+            // Flush gave up reconnecting, the connection is already torn down
+            return;
+        }
+        connected = false;
         try {
             totalConnections.dec();
             relpConnection.disconnect();
@@ -198,34 +258,68 @@ public class RelpOutput {
         }
     }
 
-    public void send(SyslogMessage syslogMessage) {
-        if(LOGGER.isDebugEnabled()) {
-            LOGGER.debug(
-                    "[#{}] Got a new message from {}@{}",
-                    getId(),
-                    syslogMessage.getAppName(),
-                    syslogMessage.getHostname()
-            );
-        }
+    public synchronized void send(OutputEvent event) {
         if(LOGGER.isTraceEnabled()) {
             LOGGER.trace(
-                    "[#{}] Sending message: {}",
+                    "[#{}] Sending message {}: {}",
                     getId(),
-                    syslogMessage.toRfc5424SyslogMessage()
+                    event.getId(),
+                    new String(event.getPayload(), StandardCharsets.UTF_8)
             );
         }
-        RelpBatch batch = new RelpBatch();
-        batch.insert(syslogMessage.toRfc5424SyslogMessage().getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = event.getPayload();
+        if(pendingRecords == 0) {
+            batchStarted = System.nanoTime();
+        }
+        batch.insert(bytes);
+        pendingEvents.add(event);
+        pendingRecords++;
+        pendingBytes += bytes.length;
 
+        // Without batching every message is committed by itself
+        if(
+                !relpConfig.getBatch().getEnabled()
+                || pendingRecords >= relpConfig.getBatch().getMaxRecords()
+                || pendingBytes >= relpConfig.getBatch().getMaxBytes()
+        ) {
+            flush();
+        }
+    }
+
+    // Commits the pending batch if it has been waiting for longer than maxLinger
+    public synchronized void flushIfLingering() {
+        if(pendingRecords == 0) {
+            return;
+        }
+        long lingered = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStarted);
+        if(lingered >= relpConfig.getBatch().getMaxLinger()) {
+            if(LOGGER.isTraceEnabled()) {
+                LOGGER.trace(
+                        "[#{}] Batch of {} records lingered for {}ms, flushing",
+                        getId(),
+                        pendingRecords,
+                        lingered
+                );
+            }
+            flush();
+        }
+    }
+
+    public synchronized void flush() {
+        if(pendingRecords == 0) {
+            return;
+        }
         boolean allSent = false;
         while (!allSent) {
+            if(LOGGER.isTraceEnabled()) {
+                LOGGER.trace(
+                        "[#{}] Committing batch of {} records",
+                        getId(),
+                        pendingRecords
+                );
+            }
+            long commitStarted = System.nanoTime();
             try {
-                if(LOGGER.isTraceEnabled()) {
-                    LOGGER.trace(
-                            "[#{}] Committing batch",
-                            getId()
-                    );
-                }
                 relpConnection.commit(batch);
             } catch (IllegalStateException | IOException | java.util.concurrent.TimeoutException e) {
                 LOGGER.error(
@@ -234,6 +328,9 @@ public class RelpOutput {
                         e
                 );
                 throughputErrors.mark();
+            } finally {
+                // Failed and timed out commits are part of the latency as well
+                stageLatency.observeSince(StageLatency.Stage.COMMIT, commitStarted);
             }
             // Check if everything has been sent, retry and reconnect if not.
             if (!batch.verifyTransactionAll()) {
@@ -241,16 +338,51 @@ public class RelpOutput {
                         "[#{}] Failed to verifyTransactionAll(), retrying",
                         getId()
                 );
+                long retryStarted = System.nanoTime();
                 batch.retryAllFailed();
                 relpConnection.tearDown();
+                connected = false;
                 totalConnections.dec();
-                connect();
+                if(!connect()) {
+                    LOGGER.warn(
+                            "[#{}] Stopped before a batch of {} records could be committed",
+                            getId(),
+                            pendingRecords
+                    );
+                    return;
+                }
+                stageLatency.observeSince(StageLatency.Stage.RETRY, retryStarted);
             } else {
                 allSent = true;
-                throughputBytes.mark(syslogMessage.toRfc5424SyslogMessage().getBytes(StandardCharsets.UTF_8).length);
-                throughputRecords.mark();
+                throughputBytes.mark(pendingBytes);
+                throughputRecords.mark(pendingRecords);
             }
         }
+        for(OutputEvent event : pendingEvents) {
+            event.acknowledge();
+        }
+        pendingEvents.clear();
+        batch = new RelpBatch();
+        pendingRecords = 0;
+        pendingBytes = 0;
+    }
+
+    // Events of the batch that was not committed before stopping, the caller takes over their acknowledgement
+    synchronized List<OutputEvent> takePending() {
+        List<OutputEvent> unsent = new ArrayList<>(pendingEvents);
+        pendingEvents.clear();
+        batch = new RelpBatch();
+        pendingRecords = 0;
+        pendingBytes = 0;
+        return unsent;
+    }
+
+    public int getOutstanding() {
+        return pendingRecords;
+    }
+
+    public AppConfigRelpTarget getTarget() {
+        return targets[targetIndex];
     }
 
     public int getId() {
@@ -0,0 +1,362 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Decouples the consumers from the Relp connections. Consumers publish encoded events into a bounded queue and every
+ * RelpOutput is drained by its own sender thread, so reader threads only block when the queue is full.
+ * Senders don't pull new events while they are waiting for an acknowledgement or reconnecting, so new work goes to the
+ * connections with the fewest unacknowledged frames and a sender that is failing over stops taking events.
+ * The number of connections is kept between min and max: a sender is added while the queue stays over half full and
+ * one is retired after the queue has been empty for a few scaling intervals.
+ * On shutdown senders stop reconnecting, events they could not send are spooled when the spool is enabled.
+ * Spooled events are acknowledged right away, so the checkpoint moves past them and only the spool keeps them from then
+ * on. With the "block" drop policy a full spool holds back the readers like the queue does, other policies drop events.
+ */
+public class RelpOutputStage {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RelpOutputStage.class);
+    // Scaling down only after this many consecutive idle intervals to avoid flapping
+    private static final int IDLE_INTERVALS_BEFORE_RETIRE = 3;
+    private final BlockingQueue<OutputEvent> queue;
+    private final int queueSize;
+    private final IntFunction<RelpOutput> outputFactory;
+    private final AtomicInteger nextOutputId = new AtomicInteger(1);
+    private final int minOutputs;
+    private final int maxOutputs;
+    private final long scaleInterval;
+    private final List<Sender> senders = new CopyOnWriteArrayList<>();
+    private final long pollInterval;
+    private final Meter backpressure;
+    private final DiskSpool spool;
+    private final StageLatency stageLatency;
+    private Thread replayer;
+    private Thread scaler;
+    private volatile boolean running = true;
+
+    private static final class Sender {
+        private final RelpOutput output;
+        private Thread thread;
+        private volatile boolean active = true;
+
+        private Sender(RelpOutput output) {
+            this.output = output;
+        }
+    }
+
+    RelpOutputStage(
+            IntFunction<RelpOutput> outputFactory,
+            int minOutputs,
+            int maxOutputs,
+            long scaleInterval,
+            int queueSize,
+            long pollInterval,
+            DiskSpool spool,
+            MetricRegistry metricRegistry,
+            StageLatency stageLatency
+    ) {
+        this.stageLatency = stageLatency;
+        this.outputFactory = outputFactory;
+        this.minOutputs = minOutputs;
+        this.maxOutputs = maxOutputs;
+        this.scaleInterval = scaleInterval;
+        this.spool = spool;
+        this.queueSize = queueSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.pollInterval = pollInterval;
+        this.backpressure = metricRegistry.meter(name("k8s01", "output", "backpressure"));
+        metricRegistry.register(name("k8s01", "output", "queue", "depth"), (Gauge<Integer>) queue::size);
+        metricRegistry.register(name("k8s01", "output", "queue", "capacity"), (Gauge<Integer>) () -> queueSize);
+        metricRegistry.register(name("k8s01", "output", "connections"), (Gauge<Integer>) this::activeSenders);
+        metricRegistry.register(
+                name("k8s01", "output", "outstanding"),
+                (Gauge<Integer>) () -> senders.stream().mapToInt(sender -> sender.output.getOutstanding()).sum()
+        );
+    }
+
+    public void start() {
+        // Every sender connects on its own thread so the connections are established in parallel
+        for(int i = 0; i < minOutputs; i++) {
+            addSender();
+        }
+        if(maxOutputs > minOutputs) {
+            scaler = new Thread(this::scaleLoop, "RelpScaler");
+            scaler.setDaemon(true);
+            scaler.start();
+        }
+        if(spool != null) {
+            replayer = new Thread(this::replayLoop, "RelpSpoolReplayer");
+            replayer.start();
+        }
+    }
+
+    public void publish(OutputEvent event) throws InterruptedException {
+        if(spool != null) {
+            // Once something is spooled, everything goes through the spool until it has been replayed to keep the order
+            if(spool.isEmpty() && queue.offer(event)) {
+                return;
+            }
+            if(LOGGER.isTraceEnabled()) {
+                LOGGER.trace(
+                        "[{}] Output queue is full, spooling event to disk",
+                        event.getId()
+                );
+            }
+            if(spool.append(event.getId(), event.getPayload())) {
+                event.acknowledge();
+                return;
+            }
+            // Spool is full and may not drop anything, wait for the queue like without a spool
+        }
+        if(!queue.offer(event)) {
+            // Queue is full, block the publishing reader until the senders catch up
+            backpressure.mark();
+            if(LOGGER.isTraceEnabled()) {
+                LOGGER.trace(
+                        "[{}] Output queue is full, waiting for free space",
+                        event.getId()
+                );
+            }
+            queue.put(event);
+        }
+    }
+
+    // Moves spooled events back to the queue as fast as the senders accept them, they leave the spool once acknowledged
+    private void replayLoop() {
+        DiskSpool.Record record = null;
+        while(running) {
+            if(record == null) {
+                record = spool.next();
+            }
+            try {
+                if(record == null) {
+                    Thread.sleep(pollInterval);
+                }
+                else if(queue.offer(new OutputEvent(record), pollInterval, TimeUnit.MILLISECONDS)) {
+                    if(LOGGER.isTraceEnabled()) {
+                        LOGGER.trace(
+                                "[{}] Replaying spooled event from {} at position {}",
+                                record.getId(),
+                                record.getSegment(),
+                                record.getPosition()
+                        );
+                    }
+                    record = null;
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private void addSender() {
+        Sender sender = new Sender(outputFactory.apply(nextOutputId.getAndIncrement()));
+        sender.thread = new Thread(() -> sendLoop(sender), "RelpSender-" + sender.output.getId());
+        senders.add(sender);
+        sender.thread.start();
+    }
+
+    private int activeSenders() {
+        int active = 0;
+        for(Sender sender : senders) {
+            if(sender.active) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    // Queue depth is used as the throughput signal: a filling queue means the connections can't keep up
+    private void scaleLoop() {
+        int idleIntervals = 0;
+        long lastBackpressure = backpressure.getCount();
+        while(running) {
+            try {
+                Thread.sleep(scaleInterval);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long currentBackpressure = backpressure.getCount();
+            boolean congested = queue.size() > queueSize / 2
+                    || currentBackpressure != lastBackpressure
+                    || (spool != null && !spool.isEmpty());
+            lastBackpressure = currentBackpressure;
+            int active = activeSenders();
+            if(congested) {
+                idleIntervals = 0;
+                if(active < maxOutputs) {
+                    LOGGER.info(
+                            "Output queue has {} events, adding Relp sender #{} of maximum {}",
+                            queue.size(),
+                            active + 1,
+                            maxOutputs
+                    );
+                    addSender();
+                }
+            }
+            else if(queue.isEmpty()) {
+                if(++idleIntervals >= IDLE_INTERVALS_BEFORE_RETIRE && active > minOutputs) {
+                    idleIntervals = 0;
+                    retireSender();
+                }
+            }
+            else {
+                idleIntervals = 0;
+            }
+        }
+    }
+
+    private void retireSender() {
+        for(int i = senders.size() - 1; i >= 0; i--) {
+            Sender sender = senders.get(i);
+            if(sender.active) {
+                LOGGER.info(
+                        "Output queue is idle, retiring Relp sender #{}",
+                        sender.output.getId()
+                );
+                sender.active = false;
+                return;
+            }
+        }
+    }
+
+    private void sendLoop(Sender sender) {
+        RelpOutput output = sender.output;
+        if(!output.connect()) {
+            // Stopped before the target could be reached, the queue is left for close()
+            return;
+        }
+        while(running && sender.active) {
+            OutputEvent event;
+            try {
+                event = queue.poll(pollInterval, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if(event != null) {
+                stageLatency.observeSince(StageLatency.Stage.POOL_WAIT, event.getCreated());
+                output.send(event);
+            }
+            output.flushIfLingering();
+        }
+        if(!running) {
+            // Send whatever is still left in the queue before the connection is closed, unless the target was lost
+            OutputEvent event;
+            while(output.isConnected() && (event = queue.poll()) != null) {
+                output.send(event);
+            }
+        }
+        output.disconnect();
+        if(running) {
+            // Retired senders leave the pool once their pending frames are acknowledged, close() joins the rest
+            senders.remove(sender);
+        }
+    }
+
+    public void close() {
+        LOGGER.info(
+                "Stopping {} Relp senders, {} events still queued",
+                activeSenders(),
+                queue.size()
+        );
+        running = false;
+        if(scaler != null) {
+            scaler.interrupt();
+            try {
+                scaler.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        for(Sender sender : senders) {
+            sender.output.stop();
+        }
+        if(replayer != null) {
+            try {
+                replayer.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        for(Sender sender : senders) {
+            try {
+                sender.thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        spoolUnsent();
+    }
+
+    // Uncommitted batches come before the queue in publishing order
+    private void spoolUnsent() {
+        List<OutputEvent> unsent = new ArrayList<>();
+        for(Sender sender : senders) {
+            unsent.addAll(sender.output.takePending());
+        }
+        queue.drainTo(unsent);
+        if(unsent.isEmpty()) {
+            return;
+        }
+        if(spool == null) {
+            LOGGER.warn(
+                    "Could not send {} events before shutting down, they are not acknowledged",
+                    unsent.size()
+            );
+            return;
+        }
+        int spooled = 0;
+        int replayed = 0;
+        for(OutputEvent event : unsent) {
+            if(event.isSpooled()) {
+                replayed++;
+            }
+            else if(spool.append(event.getId(), event.getPayload())) {
+                event.acknowledge();
+                spooled++;
+            }
+        }
+        LOGGER.info(
+                "Spooled {} events that could not be sent before shutting down, {} replayed events stay in the spool",
+                spooled,
+                replayed
+        );
+        if(spooled + replayed < unsent.size()) {
+            LOGGER.warn(
+                    "Spool is full, {} events that could not be sent before shutting down are not acknowledged",
+                    unsent.size() - spooled - replayed
+            );
+        }
+    }
+}
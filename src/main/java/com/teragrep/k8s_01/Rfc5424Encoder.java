@@ -0,0 +1,168 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.teragrep.rlo_14.Facility;
+import com.teragrep.rlo_14.Severity;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes RFC5424 syslog messages straight into a reusable buffer, producing the same bytes as
+ * SyslogMessage.toRfc5424SyslogMessage().getBytes(UTF_8) without the intermediate Strings.
+ * Not thread-safe, use one instance per thread.
+ */
+public class Rfc5424Encoder {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int RETAINED_CAPACITY = 1024 * 1024;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    public Rfc5424Encoder reset() {
+        if(buffer.capacity() > RETAINED_CAPACITY) {
+            // Don't keep a huge buffer around after an unusually large message
+            buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+        buffer.clear();
+        return this;
+    }
+
+    // <PRI>1 TIMESTAMP HOSTNAME APP-NAME - -, a null hostname or app name is written as "null" like SyslogMessage does
+    public Rfc5424Encoder header(Facility facility, Severity severity, String timestamp, String hostname, String appName) {
+        writeByte('<');
+        writeAscii(Integer.toString(facility.numericalCode() * 8 + severity.numericalCode()));
+        writeByte('>');
+        writeByte('1');
+        writeByte(' ');
+        writeUtf8(timestamp, false);
+        writeByte(' ');
+        writeUtf8(String.valueOf(hostname), false);
+        writeByte(' ');
+        writeUtf8(String.valueOf(appName), false);
+        writeAscii(" - - ");
+        return this;
+    }
+
+    public Rfc5424Encoder startElement(String sdId) {
+        writeByte('[');
+        writeUtf8(sdId, false);
+        return this;
+    }
+
+    public Rfc5424Encoder param(String name, String value) {
+        writeByte(' ');
+        writeUtf8(name, false);
+        writeByte('=');
+        writeByte('"');
+        writeUtf8(value, true);
+        writeByte('"');
+        return this;
+    }
+
+    public Rfc5424Encoder endElement() {
+        writeByte(']');
+        return this;
+    }
+
+    // Pre-encoded parts such as complete elements or params that never change
+    public Rfc5424Encoder raw(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    public Rfc5424Encoder message(String msg) {
+        if(msg != null) {
+            writeByte(' ');
+            writeUtf8(msg, false);
+        }
+        return this;
+    }
+
+    // Message that is already UTF-8 encoded
+    public Rfc5424Encoder message(byte[] msg, int offset, int length) {
+        writeByte(' ');
+        ensureCapacity(length);
+        buffer.put(msg, offset, length);
+        return this;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        buffer.put((byte) c);
+    }
+
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for(int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    // Encodes the same way as String.getBytes(UTF_8), unpaired surrogates become '?'
+    private void writeUtf8(String value, boolean escapeParamValue) {
+        // Worst case is 3 bytes per char, or 2 bytes per escaped ascii char
+        ensureCapacity(value.length() * 3);
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c < 0x80) {
+                if(escapeParamValue && (c == '"' || c == '\\' || c == ']')) {
+                    buffer.put((byte) '\\');
+                }
+                buffer.put((byte) c);
+            }
+            else if(c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            }
+            else if(Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            }
+            else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if(buffer.remaining() >= needed) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        while(capacity - buffer.position() < needed) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only memory-mapped segment file used by DiskSpool. Layout is a long holding the read position followed by
+ * records of [int length][byte id length][id][payload]. The rest of the record is written before the length so a zero
+ * length always marks the end. The read position only moves over records that have been acknowledged, records handed
+ * out for replay but not yet acknowledged are replayed again after a restart.
+ * Not thread-safe, DiskSpool guards access.
+ */
+class SpoolSegment {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpoolSegment.class);
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_OVERHEAD = 5;
+    static final int MAX_ID_LENGTH = 255;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer readBuffer;
+    private int writePosition;
+    private int readPosition; // First record that has not been acknowledged, persisted in the header
+    private int cursorPosition; // First record that has not been handed out for replay
+    private final Map<Integer, Integer> acknowledged = new HashMap<>(); // Out of order acknowledgements, position to size
+    private long records = 0;
+    private long bytes = 0;
+
+    private SpoolSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        this.readBuffer = buffer.duplicate();
+    }
+
+    static SpoolSegment create(Path path, int size) throws IOException {
+        SpoolSegment segment = new SpoolSegment(path, map(path, size, StandardOpenOption.CREATE_NEW));
+        segment.readPosition = HEADER_SIZE;
+        segment.cursorPosition = HEADER_SIZE;
+        segment.writePosition = HEADER_SIZE;
+        segment.buffer.putLong(0, HEADER_SIZE);
+        return segment;
+    }
+
+    // Recovers a segment left behind by a previous run, scanning for the records that were not yet replayed
+    static SpoolSegment open(Path path) throws IOException {
+        SpoolSegment segment = new SpoolSegment(path, map(path, (int) Files.size(path)));
+        int capacity = segment.buffer.capacity();
+        long savedPosition = capacity >= HEADER_SIZE ? segment.buffer.getLong(0) : 0;
+        int position = savedPosition < HEADER_SIZE || savedPosition > capacity ? HEADER_SIZE : (int) savedPosition;
+        segment.readPosition = position;
+        segment.cursorPosition = position;
+        while(position + 4 <= capacity) {
+            int length = segment.buffer.getInt(position);
+            if(length <= 0 || position + 4 + length > capacity) {
+                break;
+            }
+            segment.records++;
+            segment.bytes += 4 + length;
+            position += 4 + length;
+        }
+        segment.writePosition = position;
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path path, int size, StandardOpenOption... extraOptions) throws IOException {
+        StandardOpenOption[] options = new StandardOpenOption[extraOptions.length + 2];
+        options[0] = StandardOpenOption.READ;
+        options[1] = StandardOpenOption.WRITE;
+        System.arraycopy(extraOptions, 0, options, 2, extraOptions.length);
+        // Mapping stays valid after the channel is closed
+        try(FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    // Ids longer than MAX_ID_LENGTH bytes are truncated, they are only used for logging
+    static byte[] encodeId(String id) {
+        byte[] encoded = id.getBytes(StandardCharsets.UTF_8);
+        if(encoded.length <= MAX_ID_LENGTH) {
+            return encoded;
+        }
+        byte[] truncated = new byte[MAX_ID_LENGTH];
+        System.arraycopy(encoded, 0, truncated, 0, MAX_ID_LENGTH);
+        return truncated;
+    }
+
+    static int recordSize(byte[] id, byte[] payload) {
+        return RECORD_OVERHEAD + id.length + payload.length;
+    }
+
+    boolean append(byte[] id, byte[] payload) {
+        int size = recordSize(id, payload);
+        if(writePosition + size > buffer.capacity()) {
+            return false;
+        }
+        buffer.position(writePosition + 4);
+        buffer.put((byte) id.length);
+        buffer.put(id);
+        buffer.put(payload);
+        buffer.putInt(writePosition, size - 4);
+        writePosition += size;
+        records++;
+        bytes += size;
+        return true;
+    }
+
+    // Hands out the next record for replay, returns its position or -1 when everything has been handed out
+    int next() {
+        if(cursorPosition >= writePosition) {
+            return -1;
+        }
+        int position = cursorPosition;
+        cursorPosition += 4 + buffer.getInt(position);
+        return position;
+    }
+
+    String readId(int position) {
+        byte[] id = new byte[buffer.get(position + 4) & 0xFF];
+        readBuffer.position(position + RECORD_OVERHEAD);
+        readBuffer.get(id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    byte[] readPayload(int position) {
+        int idLength = buffer.get(position + 4) & 0xFF;
+        byte[] payload = new byte[buffer.getInt(position) - 1 - idLength];
+        readBuffer.position(position + RECORD_OVERHEAD + idLength);
+        readBuffer.get(payload);
+        return payload;
+    }
+
+    // Moves the persisted read position over every record acknowledged so far without gaps
+    void acknowledge(int position) {
+        acknowledged.put(position, 4 + buffer.getInt(position));
+        Integer size;
+        while((size = acknowledged.remove(readPosition)) != null) {
+            readPosition += size;
+            records--;
+            bytes -= size;
+        }
+        buffer.putLong(0, readPosition);
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    long getCapacity() {
+        return buffer.capacity();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    // The mapping is released explicitly, otherwise the blocks of the deleted file stay allocated until garbage collection
+    void delete() throws IOException {
+        unmap(buffer);
+        Files.deleteIfExists(path);
+    }
+
+    // Unsafe.invokeCleaner() on Java 9 and later, DirectBuffer.cleaner().clean() on Java 8
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            }
+            catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if(cleaner != null) {
+                    Method clean = cleaner.getClass().getMethod("clean");
+                    clean.setAccessible(true);
+                    clean.invoke(cleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn(
+                    "Can't unmap spool segment, its disk space is released once the mapping is garbage collected: {}",
+                    e.toString()
+            );
+        }
+    }
+}
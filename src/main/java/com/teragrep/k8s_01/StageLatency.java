@@ -0,0 +1,65 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Histogram;
+
+/**
+ * Latency histograms of the event pipeline stages. Buckets are fixed and observing is lock-free, so the instrumentation
+ * only costs a couple of System.nanoTime() calls per stage and can stay on in production.
+ */
+final class StageLatency {
+    enum Stage {
+        DECODE("decode"),
+        METADATA("metadata"),
+        ENCODE("encode"),
+        POOL_WAIT("pool_wait"),
+        COMMIT("commit"),
+        RETRY("retry");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Histogram.Child[] stages = new Histogram.Child[Stage.values().length];
+
+    StageLatency(CollectorRegistry collectorRegistry) {
+        Histogram latency = Histogram
+                .build()
+                .name("k8s01_stage_latency_seconds")
+                .help("Time spent in each stage of the event pipeline")
+                .labelNames("stage")
+                .exponentialBuckets(0.000002, 2.5, 17) // 2us to ~5s
+                .register(collectorRegistry);
+        for(Stage stage : Stage.values()) {
+            stages[stage.ordinal()] = latency.labels(stage.label);
+        }
+    }
+
+    void observe(Stage stage, long nanos) {
+        stages[stage.ordinal()].observe(nanos / 1e9);
+    }
+
+    void observeSince(Stage stage, long startNanos) {
+        observe(stage, System.nanoTime() - startNanos);
+    }
+}
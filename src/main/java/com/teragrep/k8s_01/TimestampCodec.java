@@ -0,0 +1,230 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneRules;
+
+/**
+ * Converts RFC3339Nano timestamps written by the container runtime into yyyy-MM-dd'T'HH:mm:ss.SSSSSSxxx in the
+ * configured timezone. Common input is parsed by hand and the formatted date, time and offset are reused for
+ * every event within the same second, only the sub-second digits are rewritten. The offset is looked up from the
+ * zone rules for every new second so DST transitions are handled like java.time does. Anything unusual falls
+ * back to java.time. Not thread-safe, use one instance per thread.
+ */
+class TimestampCodec {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSxxx");
+    private static final int PREFIX_LENGTH = 20; // yyyy-MM-ddTHH:mm:ss.
+    private static final int[] NANO_SCALE = {100000000, 10000000, 1000000, 100000, 10000, 1000, 100, 10, 1};
+
+    private final ZoneId zoneId;
+    private final ZoneRules rules;
+
+    // Result of the last parse
+    private long epochSecond;
+    private int nano;
+
+    // Epoch day of the last parsed date, most events share it
+    private String cachedDate = null;
+    private long cachedEpochDay;
+
+    // Formatted output of the last formatted second, null if it needs java.time
+    private long cachedSecond = Long.MIN_VALUE;
+    private char[] formatted = null;
+
+    TimestampCodec(ZoneId zoneId) {
+        this.zoneId = zoneId;
+        this.rules = zoneId.getRules();
+    }
+
+    // Throws DateTimeParseException if the timestamp is invalid
+    String convert(String timestamp) {
+        if(!parse(timestamp)) {
+            Instant instant = OffsetDateTime.parse(timestamp, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant();
+            epochSecond = instant.getEpochSecond();
+            nano = instant.getNano();
+        }
+        return format(epochSecond, nano);
+    }
+
+    // Epoch milliseconds of the last converted timestamp
+    long getEpochMillis() {
+        return epochSecond * 1000 + nano / 1000000;
+    }
+
+    // yyyy-MM-ddTHH:mm:ss[.fraction](Z|+HH:MM|-HH:MM), returns false when java.time has to decide
+    private boolean parse(String timestamp) {
+        int length = timestamp.length();
+        if(length < 20
+                || timestamp.charAt(4) != '-'
+                || timestamp.charAt(7) != '-'
+                || timestamp.charAt(10) != 'T'
+                || timestamp.charAt(13) != ':'
+                || timestamp.charAt(16) != ':') {
+            return false;
+        }
+        int hour = twoDigits(timestamp, 11);
+        int minute = twoDigits(timestamp, 14);
+        int second = twoDigits(timestamp, 17);
+        if(hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return false;
+        }
+
+        int position = 19;
+        int fraction = 0;
+        if(timestamp.charAt(position) == '.') {
+            position++;
+            int digits = 0;
+            while(position < length && timestamp.charAt(position) >= '0' && timestamp.charAt(position) <= '9') {
+                if(digits == NANO_SCALE.length) {
+                    return false;
+                }
+                fraction += (timestamp.charAt(position) - '0') * NANO_SCALE[digits];
+                digits++;
+                position++;
+            }
+            if(digits == 0) {
+                return false;
+            }
+        }
+
+        int offsetSeconds;
+        if(position + 1 == length && timestamp.charAt(position) == 'Z') {
+            offsetSeconds = 0;
+        }
+        else if(position + 6 == length && timestamp.charAt(position + 3) == ':') {
+            char sign = timestamp.charAt(position);
+            int offsetHours = twoDigits(timestamp, position + 1);
+            int offsetMinutes = twoDigits(timestamp, position + 4);
+            if((sign != '+' && sign != '-') || offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+                return false;
+            }
+            offsetSeconds = offsetHours * 3600 + offsetMinutes * 60;
+            if(sign == '-') {
+                offsetSeconds = -offsetSeconds;
+            }
+        }
+        else {
+            return false;
+        }
+
+        if(cachedDate == null || !timestamp.startsWith(cachedDate)) {
+            int year = fourDigits(timestamp);
+            int month = twoDigits(timestamp, 5);
+            int day = twoDigits(timestamp, 8);
+            if(year < 0 || month < 0 || day < 0) {
+                return false;
+            }
+            try {
+                cachedEpochDay = LocalDate.of(year, month, day).toEpochDay();
+            }
+            catch (DateTimeException e) {
+                return false;
+            }
+            cachedDate = timestamp.substring(0, 10);
+        }
+        epochSecond = cachedEpochDay * 86400 + hour * 3600 + minute * 60 + second - offsetSeconds;
+        nano = fraction;
+        return true;
+    }
+
+    private String format(long second, int nanoOfSecond) {
+        if(second != cachedSecond) {
+            cachedSecond = second;
+            formatted = formatSecond(second);
+        }
+        if(formatted == null) {
+            return Instant.ofEpochSecond(second, nanoOfSecond).atZone(zoneId).format(FORMAT);
+        }
+        int micros = nanoOfSecond / 1000;
+        for(int i = PREFIX_LENGTH + 5; i >= PREFIX_LENGTH; i--) {
+            formatted[i] = (char) ('0' + micros % 10);
+            micros /= 10;
+        }
+        return new String(formatted);
+    }
+
+    // Everything but the sub-second digits, null if the second can't be represented by the fast path
+    private char[] formatSecond(long second) {
+        ZoneOffset offset = rules.getOffset(Instant.ofEpochSecond(second));
+        int offsetSeconds = offset.getTotalSeconds();
+        if(offsetSeconds % 60 != 0) {
+            // Historical offsets with seconds are left to java.time
+            return null;
+        }
+        long local = second + offsetSeconds;
+        long epochDay = Math.floorDiv(local, 86400);
+        int secondOfDay = (int) Math.floorMod(local, 86400);
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        if(date.getYear() < 1 || date.getYear() > 9999) {
+            return null;
+        }
+        char[] chars = new char[PREFIX_LENGTH + 6 + 6];
+        writeDigits(chars, 0, date.getYear(), 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, date.getMonthValue(), 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, date.getDayOfMonth(), 2);
+        chars[10] = 'T';
+        writeDigits(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        writeDigits(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        writeDigits(chars, 17, secondOfDay % 60, 2);
+        chars[19] = '.';
+        int offsetPosition = PREFIX_LENGTH + 6;
+        int absoluteOffset = Math.abs(offsetSeconds);
+        chars[offsetPosition] = offsetSeconds < 0 ? '-' : '+';
+        writeDigits(chars, offsetPosition + 1, absoluteOffset / 3600, 2);
+        chars[offsetPosition + 3] = ':';
+        writeDigits(chars, offsetPosition + 4, absoluteOffset / 60 % 60, 2);
+        return chars;
+    }
+
+    private static void writeDigits(char[] chars, int position, int value, int digits) {
+        for(int i = position + digits - 1; i >= position; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    // Returns -1 if not digits
+    private static int twoDigits(String value, int position) {
+        char tens = value.charAt(position);
+        char ones = value.charAt(position + 1);
+        if(tens < '0' || tens > '9' || ones < '0' || ones > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
+
+    private static int fourDigits(String value) {
+        int high = twoDigits(value, 0);
+        int low = twoDigits(value, 2);
+        if(high < 0 || low < 0) {
+            return -1;
+        }
+        return high * 100 + low;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented as GCRA: the whole state is the theoretical arrival time of the next token,
+ * updated with compare-and-set. Holds up to burstSeconds worth of tokens. A rate of 0 means unlimited.
+ */
+class TokenBucket {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private final long ratePerSecond;
+    private final long tolerance;
+    private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+
+    TokenBucket(long ratePerSecond, int burstSeconds) {
+        this.ratePerSecond = ratePerSecond;
+        this.tolerance = burstSeconds * NANOS_PER_SECOND;
+    }
+
+    private long cost(long tokens) {
+        return tokens * NANOS_PER_SECOND / ratePerSecond;
+    }
+
+    // Takes the tokens if available. A request bigger than the whole bucket is allowed when the bucket is full.
+    boolean tryAcquire(long tokens) {
+        if(ratePerSecond == 0) {
+            return true;
+        }
+        long cost = cost(tokens);
+        while(true) {
+            long now = System.nanoTime();
+            long current = arrival.get();
+            long start = Math.max(current, now);
+            long next = start + cost;
+            if(next - now > tolerance && current > now) {
+                return false;
+            }
+            if(arrival.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    // Gives back tokens taken by tryAcquire when the request was rejected by another bucket
+    void release(long tokens) {
+        if(ratePerSecond == 0) {
+            return;
+        }
+        arrival.addAndGet(-cost(tokens));
+    }
+
+    // Always takes the tokens, returns how many nanoseconds the caller has to wait before using them
+    long reserve(long tokens) {
+        if(ratePerSecond == 0) {
+            return 0;
+        }
+        long cost = cost(tokens);
+        while(true) {
+            long now = System.nanoTime();
+            long current = arrival.get();
+            long next = Math.max(current, now) + cost;
+            if(arrival.compareAndSet(current, next)) {
+                return Math.max(0, next - now - tolerance);
+            }
+        }
+    }
+}
@@ -34,6 +34,14 @@ public class AppConfig implements BaseConfig {
     public AppConfigRelp getRelp() {
         return relp;
     }
+    private AppConfigAutoTune autoTune = new AppConfigAutoTune(); // Optional, configured sizes are used when not configured
+    public AppConfigAutoTune getAutoTune() {
+        return autoTune;
+    }
+    private AppConfigMemoryBudget memoryBudget = new AppConfigMemoryBudget(); // Optional, memory is not limited when not configured
+    public AppConfigMemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
 
     @Override
     public String toString() {
@@ -56,5 +64,15 @@ public class AppConfig implements BaseConfig {
             throw new InvalidConfigurationException("relp object no found or is null in main config object");
         }
         getRelp().validate();
+
+        if(autoTune == null) {
+            throw new InvalidConfigurationException("autoTune is null in main config object, expected it to exist or be left out");
+        }
+        getAutoTune().validate();
+
+        if(memoryBudget == null) {
+            throw new InvalidConfigurationException("memoryBudget is null in main config object, expected it to exist or be left out");
+        }
+        getMemoryBudget().validate();
     }
 }
@@ -30,11 +30,22 @@ public class AppConfigKubernetes implements BaseConfig {
     private static final Logger LOGGER = LoggerFactory.getLogger(AppConfigKubernetes.class);
     private Integer cacheExpireInterval;
     private Integer cacheMaxEntries;
+    private Integer cacheIdleExpireInterval = 3600;
+    private Integer cacheNegativeExpireInterval = 60;
+    private Integer cacheTombstoneInterval = 300;
     private String logdir;
     private AppConfigLabels labels;
     private String[] logfiles;
     private String timezone;
     private Integer maxLogReadingThreads;
+    private Integer partialLineMaxBytes = 1048576;
+    private String eventIdGenerator = "time-ordered";
+    private AppConfigSelectors selectors = new AppConfigSelectors(); // Optional, everything is collected when not configured
+    private AppConfigKubernetesDispatcher dispatcher = new AppConfigKubernetesDispatcher(); // Optional, one watcher per logfile pattern when not configured
+    private AppConfigRateLimit rateLimit = new AppConfigRateLimit(); // Optional, rate limiting is disabled when not configured
+    private AppConfigKubernetesWatch watch = new AppConfigKubernetesWatch(); // Optional, watching is disabled when not configured
+    private AppConfigKubernetesSnapshot snapshot = new AppConfigKubernetesSnapshot(); // Optional, snapshots are disabled when not configured
+    private AppConfigKubernetesCheckpoint checkpoint = new AppConfigKubernetesCheckpoint(); // Optional, checkpointing is disabled when not configured
 
     private HashMap<String, String> metadata;
 
@@ -56,12 +67,56 @@ public class AppConfigKubernetes implements BaseConfig {
     public Integer getCacheMaxEntries() {
         return cacheMaxEntries;
     }
+
+    public Integer getCacheIdleExpireInterval() {
+        return cacheIdleExpireInterval;
+    }
+
+    public Integer getCacheNegativeExpireInterval() {
+        return cacheNegativeExpireInterval;
+    }
+
+    public Integer getCacheTombstoneInterval() {
+        return cacheTombstoneInterval;
+    }
     public String getTimezone() { return timezone; }
 
     public Integer getMaxLogReadingThreads() {
         return maxLogReadingThreads;
     }
 
+    public Integer getPartialLineMaxBytes() {
+        return partialLineMaxBytes;
+    }
+
+    public String getEventIdGenerator() {
+        return eventIdGenerator;
+    }
+
+    public AppConfigSelectors getSelectors() {
+        return selectors;
+    }
+
+    public AppConfigKubernetesDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public AppConfigRateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public AppConfigKubernetesWatch getWatch() {
+        return watch;
+    }
+
+    public AppConfigKubernetesSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public AppConfigKubernetesCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
     public HashMap<String, String> getMetadata() {
         return metadata;
     }
@@ -79,6 +134,24 @@ public class AppConfigKubernetes implements BaseConfig {
         if(cacheMaxEntries == null) {
             throw new InvalidConfigurationException("cacheMaxEntries not found or is null in kubernetes config object");
         }
+        if(cacheIdleExpireInterval == null) {
+            throw new InvalidConfigurationException("cacheIdleExpireInterval is null in kubernetes config object, expected it to exist or be left out");
+        }
+        if(cacheIdleExpireInterval <= 0) {
+            throw new InvalidConfigurationException("cacheIdleExpireInterval is invalid, expected >0");
+        }
+        if(cacheNegativeExpireInterval == null) {
+            throw new InvalidConfigurationException("cacheNegativeExpireInterval is null in kubernetes config object, expected it to exist or be left out");
+        }
+        if(cacheNegativeExpireInterval <= 0) {
+            throw new InvalidConfigurationException("cacheNegativeExpireInterval is invalid, expected >0");
+        }
+        if(cacheTombstoneInterval == null) {
+            throw new InvalidConfigurationException("cacheTombstoneInterval is null in kubernetes config object, expected it to exist or be left out");
+        }
+        if(cacheTombstoneInterval <= 0) {
+            throw new InvalidConfigurationException("cacheTombstoneInterval is invalid, expected >0");
+        }
         if(logdir == null) {
             throw new InvalidConfigurationException("logdir not found or is null in kubernetes config object");
         }
@@ -107,6 +180,50 @@ public class AppConfigKubernetes implements BaseConfig {
             throw new InvalidConfigurationException("maxLogReadingThreads is invalid, expected >0");
         }
 
+        if(partialLineMaxBytes == null) {
+            throw new InvalidConfigurationException("partialLineMaxBytes is null in kubernetes config object, expected it to exist or be left out");
+        }
+        if(partialLineMaxBytes <= 0) {
+            throw new InvalidConfigurationException("partialLineMaxBytes is invalid, expected >0");
+        }
+
+        if(eventIdGenerator == null) {
+            throw new InvalidConfigurationException("eventIdGenerator is null in kubernetes config object, expected it to exist or be left out");
+        }
+        if(!eventIdGenerator.equals("time-ordered") && !eventIdGenerator.equals("random")) {
+            throw new InvalidConfigurationException("eventIdGenerator is invalid, expected \"time-ordered\" or \"random\"");
+        }
+
+        if(selectors == null) {
+            throw new InvalidConfigurationException("selectors is null in kubernetes config object, expected it to exist or be left out");
+        }
+        selectors.validate();
+
+        if(dispatcher == null) {
+            throw new InvalidConfigurationException("dispatcher is null in kubernetes config object, expected it to exist or be left out");
+        }
+        dispatcher.validate();
+
+        if(rateLimit == null) {
+            throw new InvalidConfigurationException("rateLimit is null in kubernetes config object, expected it to exist or be left out");
+        }
+        rateLimit.validate();
+
+        if(watch == null) {
+            throw new InvalidConfigurationException("watch is null in kubernetes config object, expected it to exist or be left out");
+        }
+        watch.validate();
+
+        if(snapshot == null) {
+            throw new InvalidConfigurationException("snapshot is null in kubernetes config object, expected it to exist or be left out");
+        }
+        snapshot.validate();
+
+        if(checkpoint == null) {
+            throw new InvalidConfigurationException("checkpoint is null in kubernetes config object, expected it to exist or be left out");
+        }
+        checkpoint.validate();
+
         if(metadata == null) {
             throw new InvalidConfigurationException("metadata is null, expected it to exist, even if empty.");
         }
@@ -0,0 +1,56 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing the .kubernetes.dispatcher part of config.json */
+public class AppConfigKubernetesDispatcher implements BaseConfig {
+    private Boolean enabled = false;
+    private Integer readingThreads = 4;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public Integer getReadingThreads() {
+        return readingThreads;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(enabled == null) {
+            throw new InvalidConfigurationException("enabled not found or is null in kubernetes dispatcher config object");
+        }
+        if(!enabled) {
+            return; // We do not check further if not enabled
+        }
+        if(readingThreads == null) {
+            throw new InvalidConfigurationException("readingThreads is null in kubernetes dispatcher config object, expected it to exist or be left out");
+        }
+        if(readingThreads <= 0) {
+            throw new InvalidConfigurationException("Kubernetes dispatcher readingThreads is invalid, expected >0");
+        }
+    }
+}
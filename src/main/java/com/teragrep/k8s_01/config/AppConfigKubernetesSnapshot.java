@@ -0,0 +1,67 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing the .kubernetes.snapshot part of config.json */
+public class AppConfigKubernetesSnapshot implements BaseConfig {
+    private Boolean enabled = false;
+    private Integer interval = 60;
+    private Integer maxAge = 3600;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public Integer getInterval() {
+        return interval;
+    }
+
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(enabled == null) {
+            throw new InvalidConfigurationException("enabled not found or is null in kubernetes snapshot config object");
+        }
+        if(!enabled) {
+            return; // We do not check further if not enabled
+        }
+        if(interval == null) {
+            throw new InvalidConfigurationException("interval is null in kubernetes snapshot config object, expected it to exist or be left out");
+        }
+        if(interval <= 0) {
+            throw new InvalidConfigurationException("Kubernetes snapshot interval is invalid, expected >0");
+        }
+        if(maxAge == null) {
+            throw new InvalidConfigurationException("maxAge is null in kubernetes snapshot config object, expected it to exist or be left out");
+        }
+        if(maxAge <= 0) {
+            throw new InvalidConfigurationException("Kubernetes snapshot maxAge is invalid, expected >0");
+        }
+    }
+}
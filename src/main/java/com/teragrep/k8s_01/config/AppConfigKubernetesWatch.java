@@ -0,0 +1,67 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing the .kubernetes.watch part of config.json */
+public class AppConfigKubernetesWatch implements BaseConfig {
+    private Boolean enabled = false;
+    private String nodeName; // Can be null, K8S_01_NODE_NAME environment variable is used instead
+    private Integer resyncInterval = 0;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public String getNodeName() {
+        if(nodeName == null) {
+            return System.getenv("K8S_01_NODE_NAME");
+        }
+        return nodeName;
+    }
+
+    public Integer getResyncInterval() {
+        return resyncInterval;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(enabled == null) {
+            throw new InvalidConfigurationException("enabled not found or is null in kubernetes watch config object");
+        }
+        if(!enabled) {
+            return; // We do not check further if not enabled
+        }
+        if(getNodeName() == null) {
+            throw new InvalidConfigurationException("nodeName not found or is null in kubernetes watch config object and K8S_01_NODE_NAME environment variable is not set");
+        }
+        if(resyncInterval == null) {
+            throw new InvalidConfigurationException("resyncInterval not found or is null in kubernetes watch config object");
+        }
+        if(resyncInterval < 0) {
+            throw new InvalidConfigurationException("Kubernetes watch resyncInterval is invalid, expected positive integer");
+        }
+    }
+}
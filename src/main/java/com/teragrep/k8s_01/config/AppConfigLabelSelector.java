@@ -0,0 +1,69 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* POJO representing a Kubernetes style label selector in .kubernetes.selectors, empty selector matches everything */
+public class AppConfigLabelSelector implements BaseConfig {
+    private HashMap<String, String> matchLabels = new HashMap<>();
+    private AppConfigSelectorExpression[] matchExpressions = new AppConfigSelectorExpression[0];
+
+    public HashMap<String, String> getMatchLabels() {
+        return matchLabels;
+    }
+
+    public AppConfigSelectorExpression[] getMatchExpressions() {
+        return matchExpressions;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(matchLabels == null) {
+            throw new InvalidConfigurationException("matchLabels is null in selector config object, expected it to exist or be left out");
+        }
+        for(Map.Entry<String, String> entry : matchLabels.entrySet()) {
+            if(entry.getValue() == null) {
+                throw new InvalidConfigurationException(
+                        String.format(
+                                "matchLabels <[%s]> is null, expected string",
+                                entry.getKey()
+                        )
+                );
+            }
+        }
+        if(matchExpressions == null) {
+            throw new InvalidConfigurationException("matchExpressions is null in selector config object, expected it to exist or be left out");
+        }
+        for(AppConfigSelectorExpression matchExpression : matchExpressions) {
+            if(matchExpression == null) {
+                throw new InvalidConfigurationException("Found null matchExpressions definition in selector config object, expected object");
+            }
+            matchExpression.validate();
+        }
+    }
+}
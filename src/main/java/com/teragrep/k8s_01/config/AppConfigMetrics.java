@@ -27,6 +27,12 @@ public class AppConfigMetrics implements BaseConfig {
 
     private Integer port;
 
+    public AppConfigMetricsLag getLag() {
+        return lag;
+    }
+
+    private AppConfigMetricsLag lag = new AppConfigMetricsLag(); // Optional, lag is not tracked when not configured
+
     @Override
     public String toString() {
         return new Gson().toJson(this);
@@ -41,5 +47,10 @@ public class AppConfigMetrics implements BaseConfig {
         if(port < 1 || port > 65535) {
             throw new InvalidConfigurationException("Metrics port is invalid, expected integer between 1 and 65535");
         }
+
+        if(lag == null) {
+            throw new InvalidConfigurationException("lag is null in metrics config object, expected it to exist or be left out");
+        }
+        lag.validate();
     }
 }
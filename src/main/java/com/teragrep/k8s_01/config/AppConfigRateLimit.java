@@ -0,0 +1,85 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing the .kubernetes.rateLimit part of config.json */
+public class AppConfigRateLimit implements BaseConfig {
+    private Boolean enabled = false;
+    private String action = "delay";
+    private AppConfigRateLimitBucket namespace = new AppConfigRateLimitBucket(); // Optional, unlimited when not configured
+    private AppConfigRateLimitBucket pod = new AppConfigRateLimitBucket(); // Optional, unlimited when not configured
+    private Integer maxLabeledNamespaces = 100;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public AppConfigRateLimitBucket getNamespace() {
+        return namespace;
+    }
+
+    public AppConfigRateLimitBucket getPod() {
+        return pod;
+    }
+
+    public Integer getMaxLabeledNamespaces() {
+        return maxLabeledNamespaces;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(enabled == null) {
+            throw new InvalidConfigurationException("enabled not found or is null in rateLimit config object");
+        }
+        if(!enabled) {
+            return; // We do not check further if not enabled
+        }
+        if(action == null) {
+            throw new InvalidConfigurationException("action is null in rateLimit config object, expected it to exist or be left out");
+        }
+        if(!action.equals("delay") && !action.equals("drop")) {
+            throw new InvalidConfigurationException("Rate limit action is invalid, expected \"delay\" or \"drop\"");
+        }
+        if(namespace == null) {
+            throw new InvalidConfigurationException("namespace is null in rateLimit config object, expected it to exist or be left out");
+        }
+        namespace.validate();
+        if(pod == null) {
+            throw new InvalidConfigurationException("pod is null in rateLimit config object, expected it to exist or be left out");
+        }
+        pod.validate();
+        if(maxLabeledNamespaces == null) {
+            throw new InvalidConfigurationException("maxLabeledNamespaces is null in rateLimit config object, expected it to exist or be left out");
+        }
+        if(maxLabeledNamespaces < 0) {
+            throw new InvalidConfigurationException("Rate limit maxLabeledNamespaces is invalid, expected positive integer");
+        }
+    }
+}
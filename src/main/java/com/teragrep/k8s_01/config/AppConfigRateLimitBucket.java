@@ -0,0 +1,67 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing the .kubernetes.rateLimit.{namespace,pod} part of config.json, 0 means unlimited */
+public class AppConfigRateLimitBucket implements BaseConfig {
+    private Long eventsPerSecond = 0L;
+    private Long bytesPerSecond = 0L;
+    private Integer burstSeconds = 1;
+
+    public Long getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public Long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public Integer getBurstSeconds() {
+        return burstSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(eventsPerSecond == null) {
+            throw new InvalidConfigurationException("eventsPerSecond is null in rateLimit config object, expected it to exist or be left out");
+        }
+        if(eventsPerSecond < 0) {
+            throw new InvalidConfigurationException("Rate limit eventsPerSecond is invalid, expected positive integer");
+        }
+        if(bytesPerSecond == null) {
+            throw new InvalidConfigurationException("bytesPerSecond is null in rateLimit config object, expected it to exist or be left out");
+        }
+        if(bytesPerSecond < 0) {
+            throw new InvalidConfigurationException("Rate limit bytesPerSecond is invalid, expected positive integer");
+        }
+        if(burstSeconds == null) {
+            throw new InvalidConfigurationException("burstSeconds is null in rateLimit config object, expected it to exist or be left out");
+        }
+        if(burstSeconds <= 0) {
+            throw new InvalidConfigurationException("Rate limit burstSeconds is invalid, expected >0");
+        }
+    }
+}
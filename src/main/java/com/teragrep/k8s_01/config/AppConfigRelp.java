@@ -32,7 +32,15 @@ public class AppConfigRelp implements BaseConfig {
                     "Found K8S_01_RELP_TARGET environment variable <[{}]>, using it relp target.",
                     relpTarget
             );
-            this.target = relpTarget;
+            // Either a single hostname or a list in form of "host1,host2:1602"
+            if(relpTarget.contains(",") || relpTarget.contains(":")) {
+                this.target = null;
+                this.targets = parseTargets(relpTarget);
+            }
+            else {
+                this.target = relpTarget;
+                this.targets = null;
+            }
         }
 
         String relpPortString = System.getenv("K8S_01_RELP_PORT");
@@ -56,11 +64,16 @@ public class AppConfigRelp implements BaseConfig {
     }
     private String target;
     private Integer port;
+    private AppConfigRelpTarget[] targets; // Can be null, target and port are used instead
     private Integer connectionTimeout;
     private Integer readTimeout;
     private Integer writeTimeout;
     private Integer reconnectInterval;
     private AppConfigRelpTls tls;
+    private Integer queueSize = 4096;
+    private AppConfigRelpConnections connections = new AppConfigRelpConnections(); // Optional, one connection per reading thread when not configured
+    private AppConfigRelpBatch batch = new AppConfigRelpBatch(); // Optional, batching is disabled when not configured
+    private AppConfigRelpSpool spool = new AppConfigRelpSpool(); // Optional, spooling is disabled when not configured
 
     public String getTarget() {
         return target;
@@ -70,6 +83,55 @@ public class AppConfigRelp implements BaseConfig {
         return port;
     }
 
+    // All configured targets, falling back to .relp.port for the ones without a port
+    public AppConfigRelpTarget[] getTargets() {
+        if(targets == null || targets.length == 0) {
+            return new AppConfigRelpTarget[]{new AppConfigRelpTarget(target, port)};
+        }
+        AppConfigRelpTarget[] resolved = new AppConfigRelpTarget[targets.length];
+        for(int i = 0; i < targets.length; i++) {
+            if(targets[i] == null) {
+                resolved[i] = null;
+            }
+            else {
+                resolved[i] = new AppConfigRelpTarget(
+                        targets[i].getTarget(),
+                        targets[i].getPort() != null ? targets[i].getPort() : port
+                );
+            }
+        }
+        return resolved;
+    }
+
+    private static AppConfigRelpTarget[] parseTargets(String value) throws InvalidConfigurationException {
+        String[] entries = value.split(",");
+        AppConfigRelpTarget[] parsed = new AppConfigRelpTarget[entries.length];
+        for(int i = 0; i < entries.length; i++) {
+            String entry = entries[i].trim();
+            int separator = entry.lastIndexOf(':');
+            if(separator == -1) {
+                parsed[i] = new AppConfigRelpTarget(entry, null);
+                continue;
+            }
+            try {
+                parsed[i] = new AppConfigRelpTarget(
+                        entry.substring(0, separator),
+                        Integer.parseInt(entry.substring(separator + 1))
+                );
+            }
+            catch(NumberFormatException e) {
+                throw new InvalidConfigurationException(
+                        String.format(
+                                "Got invalid port for relp target <[%s]> in K8S_01_RELP_TARGET: ",
+                                entry
+                        ),
+                        e
+                );
+            }
+        }
+        return parsed;
+    }
+
     public Integer getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -90,6 +152,22 @@ public class AppConfigRelp implements BaseConfig {
         return tls;
     }
 
+    public Integer getQueueSize() {
+        return queueSize;
+    }
+
+    public AppConfigRelpConnections getConnections() {
+        return connections;
+    }
+
+    public AppConfigRelpBatch getBatch() {
+        return batch;
+    }
+
+    public AppConfigRelpSpool getSpool() {
+        return spool;
+    }
+
     @Override
     public String toString() {
         return new Gson().toJson(this);
@@ -97,16 +175,18 @@ public class AppConfigRelp implements BaseConfig {
 
     @Override
     public void validate() throws InvalidConfigurationException {
-        if(target == null) {
-            throw new InvalidConfigurationException("target not found or is null in relp config object");
+        if(target == null && (targets == null || targets.length == 0)) {
+            throw new InvalidConfigurationException("target or targets not found or is null in relp config object");
         }
-
-        if(port == null) {
-            throw new InvalidConfigurationException("port not found or is null in relp config object");
-        }
-        if(port < 1 || port > 65535) {
+        if(port != null && (port < 1 || port > 65535)) {
             throw new InvalidConfigurationException("Relp port is invalid, expected integer between 1 and 65535");
         }
+        for(AppConfigRelpTarget relpTarget : getTargets()) {
+            if(relpTarget == null) {
+                throw new InvalidConfigurationException("Found null relp target definition in configuration file, expected object");
+            }
+            relpTarget.validate();
+        }
 
         if(connectionTimeout == null) {
             throw new InvalidConfigurationException("connectionTimeout not found or is null in relp config object");
@@ -133,5 +213,27 @@ public class AppConfigRelp implements BaseConfig {
             throw new InvalidConfigurationException("tls not found or is null in relp config object");
         }
         tls.validate();
+
+        if(queueSize == null) {
+            throw new InvalidConfigurationException("queueSize is null in relp config object, expected it to exist or be left out");
+        }
+        if(queueSize <= 0) {
+            throw new InvalidConfigurationException("Relp queueSize is invalid, expected >0");
+        }
+
+        if(connections == null) {
+            throw new InvalidConfigurationException("connections is null in relp config object, expected it to exist or be left out");
+        }
+        connections.validate();
+
+        if(batch == null) {
+            throw new InvalidConfigurationException("batch is null in relp config object, expected it to exist or be left out");
+        }
+        batch.validate();
+
+        if(spool == null) {
+            throw new InvalidConfigurationException("spool is null in relp config object, expected it to exist or be left out");
+        }
+        spool.validate();
     }
 }
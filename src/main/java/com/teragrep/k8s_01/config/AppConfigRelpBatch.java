@@ -0,0 +1,78 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing the .relp.batch part of config.json */
+public class AppConfigRelpBatch implements BaseConfig {
+    private Boolean enabled = false;
+    private Integer maxRecords = 1024;
+    private Integer maxBytes = 1048576;
+    private Integer maxLinger = 100;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public Integer getMaxRecords() {
+        return maxRecords;
+    }
+
+    public Integer getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Integer getMaxLinger() {
+        return maxLinger;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(enabled == null) {
+            throw new InvalidConfigurationException("enabled not found or is null in relp batch config object");
+        }
+        if(!enabled) {
+            return; // We do not check further if not enabled
+        }
+        if(maxRecords == null) {
+            throw new InvalidConfigurationException("maxRecords not found or is null in relp batch config object");
+        }
+        if(maxRecords <= 0) {
+            throw new InvalidConfigurationException("Relp batch maxRecords is invalid, expected >0");
+        }
+        if(maxBytes == null) {
+            throw new InvalidConfigurationException("maxBytes not found or is null in relp batch config object");
+        }
+        if(maxBytes <= 0) {
+            throw new InvalidConfigurationException("Relp batch maxBytes is invalid, expected >0");
+        }
+        if(maxLinger == null) {
+            throw new InvalidConfigurationException("maxLinger not found or is null in relp batch config object");
+        }
+        if(maxLinger <= 0) {
+            throw new InvalidConfigurationException("Relp batch maxLinger is invalid, expected >0");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing the .relp.connections part of config.json */
+public class AppConfigRelpConnections implements BaseConfig {
+    private Integer min; // Can be null, 1 is used when max is set
+    private Integer max; // Can be null, one connection per reading thread is used instead
+    private Integer scaleInterval = 10;
+
+    public Integer getMin() {
+        return min;
+    }
+
+    public Integer getMax() {
+        return max;
+    }
+
+    public Integer getScaleInterval() {
+        return scaleInterval;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(max == null) {
+            if(min != null) {
+                throw new InvalidConfigurationException("Relp connections min is set without max, expected both or only max");
+            }
+            return;
+        }
+        if(max <= 0) {
+            throw new InvalidConfigurationException("Relp connections max is invalid, expected >0");
+        }
+        if(min != null && (min <= 0 || min > max)) {
+            throw new InvalidConfigurationException("Relp connections min is invalid, expected >0 and <= max");
+        }
+        if(scaleInterval == null) {
+            throw new InvalidConfigurationException("scaleInterval is null in relp connections config object, expected it to exist or be left out");
+        }
+        if(scaleInterval <= 0) {
+            throw new InvalidConfigurationException("Relp connections scaleInterval is invalid, expected >0");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing the .relp.spool part of config.json */
+public class AppConfigRelpSpool implements BaseConfig {
+    private Boolean enabled = false;
+    private Long maxBytes = 1073741824L;
+    private Integer segmentSize = 67108864;
+    private String dropPolicy = "block";
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public Long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Integer getSegmentSize() {
+        return segmentSize;
+    }
+
+    public String getDropPolicy() {
+        return dropPolicy;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(enabled == null) {
+            throw new InvalidConfigurationException("enabled not found or is null in relp spool config object");
+        }
+        if(!enabled) {
+            return; // We do not check further if not enabled
+        }
+        if(maxBytes == null) {
+            throw new InvalidConfigurationException("maxBytes not found or is null in relp spool config object");
+        }
+        if(segmentSize == null) {
+            throw new InvalidConfigurationException("segmentSize not found or is null in relp spool config object");
+        }
+        if(segmentSize <= 0) {
+            throw new InvalidConfigurationException("Relp spool segmentSize is invalid, expected >0");
+        }
+        if(maxBytes < segmentSize) {
+            throw new InvalidConfigurationException("Relp spool maxBytes is invalid, expected it to be at least segmentSize");
+        }
+        if(dropPolicy == null) {
+            throw new InvalidConfigurationException("dropPolicy not found or is null in relp spool config object");
+        }
+        if(!dropPolicy.equals("block") && !dropPolicy.equals("oldest") && !dropPolicy.equals("newest")) {
+            throw new InvalidConfigurationException("Relp spool dropPolicy is invalid, expected \"block\", \"oldest\" or \"newest\"");
+        }
+    }
+}
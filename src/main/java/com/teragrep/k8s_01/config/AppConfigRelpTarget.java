@@ -0,0 +1,63 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing a single entry of the .relp.targets part of config.json */
+public class AppConfigRelpTarget implements BaseConfig {
+    private String target;
+    private Integer port; // Can be null, .relp.port is used instead
+
+    public AppConfigRelpTarget(String target, Integer port) {
+        this.target = target;
+        this.port = port;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public Integer getPort() {
+        return port;
+    }
+
+    @Override
+    public String toString() {
+        return target + ":" + port;
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(target == null) {
+            throw new InvalidConfigurationException("target not found or is null in relp target config object");
+        }
+        if(port == null) {
+            throw new InvalidConfigurationException(
+                    String.format(
+                            "port not found for relp target <[%s]> and no default port found in relp config object",
+                            target
+                    )
+            );
+        }
+        if(port < 1 || port > 65535) {
+            throw new InvalidConfigurationException("Relp port is invalid, expected integer between 1 and 65535");
+        }
+    }
+}
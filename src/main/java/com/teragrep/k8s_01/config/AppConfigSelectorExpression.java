@@ -0,0 +1,97 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing a single matchExpressions item of a label selector */
+public class AppConfigSelectorExpression implements BaseConfig {
+    private String key;
+    private String operator;
+    private String[] values = new String[0];
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public String[] getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(key == null) {
+            throw new InvalidConfigurationException("key not found or is null in selector expression config object");
+        }
+        if(operator == null) {
+            throw new InvalidConfigurationException("operator not found or is null in selector expression config object");
+        }
+        if(values == null) {
+            throw new InvalidConfigurationException("values is null in selector expression config object, expected it to exist or be left out");
+        }
+        for(String value : values) {
+            if(value == null) {
+                throw new InvalidConfigurationException("Found null value in selector expression config object, expected string");
+            }
+        }
+        switch (operator) {
+            case "In":
+            case "NotIn":
+                if(values.length == 0) {
+                    throw new InvalidConfigurationException(
+                            String.format(
+                                    "Selector expression for key <[%s]> with operator %s requires values",
+                                    key,
+                                    operator
+                            )
+                    );
+                }
+                break;
+            case "Exists":
+            case "DoesNotExist":
+                if(values.length != 0) {
+                    throw new InvalidConfigurationException(
+                            String.format(
+                                    "Selector expression for key <[%s]> with operator %s must not have values",
+                                    key,
+                                    operator
+                            )
+                    );
+                }
+                break;
+            default:
+                throw new InvalidConfigurationException(
+                        String.format(
+                                "Selector expression for key <[%s]> has invalid operator <[%s]>, expected In, NotIn, Exists or DoesNotExist",
+                                key,
+                                operator
+                        )
+                );
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.config;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.InvalidConfigurationException;
+
+/* POJO representing the .kubernetes.selectors part of config.json */
+public class AppConfigSelectors implements BaseConfig {
+    private AppConfigLabelSelector pod = new AppConfigLabelSelector(); // Optional, matches every pod when not configured
+    private AppConfigLabelSelector namespace = new AppConfigLabelSelector(); // Optional, matches every namespace when not configured
+
+    public AppConfigLabelSelector getPod() {
+        return pod;
+    }
+
+    public AppConfigLabelSelector getNamespace() {
+        return namespace;
+    }
+
+    @Override
+    public String toString() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public void validate() throws InvalidConfigurationException {
+        if(pod == null) {
+            throw new InvalidConfigurationException("pod is null in selectors config object, expected it to exist or be left out");
+        }
+        pod.validate();
+        if(namespace == null) {
+            throw new InvalidConfigurationException("namespace is null in selectors config object, expected it to exist or be left out");
+        }
+        namespace.validate();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01.metadata;
+
+import com.google.gson.JsonObject;
+import com.teragrep.k8s_01.Rfc5424Encoder;
+
+/* Pre-encoded and escaped structured-data of a single container, cached in the PodMetadataContainer */
+public class ContainerStructuredData {
+    private final NamespaceMetadataContainer namespace;
+    private final byte[] origin;
+    private final byte[] kubernetesMeta;
+
+    public ContainerStructuredData(
+            NamespaceMetadataContainer namespace,
+            PodMetadataContainer pod,
+            String containerName,
+            String containerId,
+            String basepath,
+            Rfc5424Encoder encoder
+    ) {
+        this.namespace = namespace;
+        origin = encoder.reset()
+                .startElement("origin@48577")
+                .param("hostname", pod.getHost() + "/" + containerId)
+                .endElement()
+                .toByteArray();
+
+        JsonObject dockerMetadata = new JsonObject();
+        dockerMetadata.addProperty("container_id", containerId);
+        kubernetesMeta = encoder.reset()
+                .param("kubernetes", new KubernetesMetadata(namespace, pod, containerName, basepath).toString())
+                .param("docker", dockerMetadata.toString())
+                .toByteArray();
+    }
+
+    // Namespace labels are part of the metadata so a changed namespace requires rebuilding
+    public boolean isBuiltFrom(NamespaceMetadataContainer namespace) {
+        return this.namespace == namespace;
+    }
+
+    // Complete [origin@48577 ...] element
+    public byte[] getOrigin() {
+        return origin;
+    }
+
+    // kubernetes and docker params of the kubernetesmeta@48577 element
+    public byte[] getKubernetesMeta() {
+        return kubernetesMeta;
+    }
+}
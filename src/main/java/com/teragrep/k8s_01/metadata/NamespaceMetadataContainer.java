@@ -23,19 +23,32 @@ import java.util.Map;
 /* POJO for storing V1Namespace information instead of the full object */
 public class NamespaceMetadataContainer {
     private final String uid;
+    private final String name;
     private final Map<String, String> labels;
     public NamespaceMetadataContainer(V1Namespace namespace) {
         if(namespace.getMetadata() == null) {
             throw new RuntimeException("Namespace metadata is empty, can't continue.");
         }
         uid = namespace.getMetadata().getUid();
+        name = namespace.getMetadata().getName();
         labels = namespace.getMetadata().getLabels();
     }
 
+    // Placeholder for a namespace that doesn't exist in the API
+    public NamespaceMetadataContainer(String name) {
+        uid = null;
+        this.name = name;
+        labels = null;
+    }
+
     public String getUid() {
         return uid;
     }
 
+    public String getName() {
+        return name;
+    }
+
     public Map<String, String> getLabels() {
         return labels;
     }
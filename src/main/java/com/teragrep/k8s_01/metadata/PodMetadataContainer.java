@@ -20,6 +20,7 @@ package com.teragrep.k8s_01.metadata;
 import io.kubernetes.client.openapi.models.V1Pod;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /* POJO for storing V1Pod information instead of the full object */
 public class PodMetadataContainer {
@@ -29,6 +30,8 @@ public class PodMetadataContainer {
     private final String host;
     private final String podname;
     private final String namespaceName;
+    // Follows the lifecycle of this container, refreshed pod metadata starts with an empty map
+    private final transient Map<String, ContainerStructuredData> structuredData = new ConcurrentHashMap<>();
     public PodMetadataContainer(V1Pod pod) {
         if(pod.getMetadata() == null) {
             throw new RuntimeException("Pod metadata is empty, can't continue.");
@@ -44,6 +47,26 @@ public class PodMetadataContainer {
         namespaceName = pod.getMetadata().getNamespace();
     }
 
+    // Placeholder for a pod that doesn't exist in the API, labels are null so fallback values get used
+    public PodMetadataContainer(String namespaceName, String podname) {
+        creationTimestamp = null;
+        podId = null;
+        labels = null;
+        host = null;
+        this.podname = podname;
+        this.namespaceName = namespaceName;
+    }
+
+    // Restores a deserialized copy, transient fields are not initialized by Gson
+    public PodMetadataContainer(PodMetadataContainer other) {
+        creationTimestamp = other.creationTimestamp;
+        podId = other.podId;
+        labels = other.labels;
+        host = other.host;
+        podname = other.podname;
+        namespaceName = other.namespaceName;
+    }
+
     public String getCreationTimestamp() {
         return creationTimestamp;
     }
@@ -67,4 +90,12 @@ public class PodMetadataContainer {
     public String getNamespaceName() {
         return namespaceName;
     }
+
+    public ContainerStructuredData getStructuredData(String containerId) {
+        return structuredData.get(containerId);
+    }
+
+    public void putStructuredData(String containerId, ContainerStructuredData containerStructuredData) {
+        structuredData.put(containerId, containerStructuredData);
+    }
 }
@@ -0,0 +1,211 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AckCheckpointerTest {
+    private static final String FILENAME = "app-7d4b9_team_app-0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef.log";
+
+    @TempDir
+    Path statesStore;
+
+    @TempDir
+    Path logs;
+
+    /* Stands in for K8SConsumer: every line is published and tracked, lines listed in failing throw */
+    private static final class RecordingConsumer implements AckCheckpointer.RecordConsumer {
+        private final AckCheckpointer checkpointer;
+        private final List<String> lines = new ArrayList<>();
+        private final List<FileCheckpoint.Pending> published = new ArrayList<>();
+        private final List<String> failing = new ArrayList<>();
+
+        private RecordingConsumer(AckCheckpointer checkpointer) {
+            this.checkpointer = checkpointer;
+        }
+
+        @Override
+        public void accept(String path, String filename, byte[] record, long startOffset, long endOffset) {
+            FileCheckpoint checkpoint = checkpointer.get(path, filename, "team", startOffset);
+            String line = new String(record, StandardCharsets.UTF_8);
+            if(failing.contains(line)) {
+                throw new IllegalStateException("Can't handle " + line);
+            }
+            lines.add(line);
+            published.add(checkpoint.track(endOffset, "stdout", 0));
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.write(logs.resolve(FILENAME), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private AckCheckpointer checkpointer() {
+        return new AckCheckpointer(statesStore, true, 3600, new MetricRegistry());
+    }
+
+    // Previous run read a and b but only a was acknowledged
+    private void previousRun() {
+        AckCheckpointer checkpointer = checkpointer();
+        RecordingConsumer consumer = new RecordingConsumer(checkpointer);
+        consumer.accept(logs.toString(), FILENAME, "a".getBytes(StandardCharsets.UTF_8), 0, 2);
+        consumer.accept(logs.toString(), FILENAME, "b".getBytes(StandardCharsets.UTF_8), 2, 4);
+        consumer.published.get(0).acknowledge();
+        checkpointer.close();
+    }
+
+    @Test
+    public void replaysFromAcknowledgedOffsetToEndOfFile() throws IOException {
+        write("a\nb\n");
+        previousRun();
+        // Lines the file reader read after the last commit are replayed too, a line without newline is left to the reader
+        Files.write(logs.resolve(FILENAME), "c\nd\ne".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        AckCheckpointer checkpointer = checkpointer();
+        RecordingConsumer consumer = new RecordingConsumer(checkpointer);
+        checkpointer.replay(consumer);
+        Assertions.assertEquals(3, consumer.lines.size());
+        Assertions.assertEquals("b", consumer.lines.get(0));
+        Assertions.assertEquals("c", consumer.lines.get(1));
+        Assertions.assertEquals("d", consumer.lines.get(2));
+
+        FileCheckpoint checkpoint = checkpointer.get(logs.toString(), FILENAME, "team", 0);
+        Assertions.assertEquals(2, checkpoint.getAcknowledgedOffset());
+        Assertions.assertEquals(8, checkpoint.getReadOffset());
+        // The file reader resuming anywhere before the end of the replay skips what was replayed
+        Assertions.assertTrue(checkpoint.isReplayed(4));
+        Assertions.assertTrue(checkpoint.isReplayed(8));
+        Assertions.assertFalse(checkpoint.isReplayed(10));
+        Assertions.assertFalse(checkpoint.isReplayed(8));
+        checkpointer.close();
+    }
+
+    @Test
+    public void replayContinuesAfterFailingRecord() throws IOException {
+        write("a\nb\n");
+        previousRun();
+        Files.write(logs.resolve(FILENAME), "c\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        AckCheckpointer checkpointer = checkpointer();
+        RecordingConsumer consumer = new RecordingConsumer(checkpointer);
+        consumer.failing.add("b");
+        checkpointer.replay(consumer);
+        Assertions.assertEquals(1, consumer.lines.size());
+        Assertions.assertEquals("c", consumer.lines.get(0));
+        // The failed record is completed so the acknowledged offset can move past it
+        consumer.published.get(0).acknowledge();
+        Assertions.assertEquals(6, checkpointer.get(logs.toString(), FILENAME, "team", 0).getAcknowledgedOffset());
+        checkpointer.close();
+    }
+
+    @Test
+    public void replayResumesAfterCrashDuringReplay() throws IOException {
+        write("a\nb\n");
+        previousRun();
+        // Nothing from the replay is acknowledged before the process dies, the stored checkpoint must survive a commit
+        AckCheckpointer crashed = checkpointer();
+        crashed.close();
+
+        AckCheckpointer checkpointer = checkpointer();
+        RecordingConsumer consumer = new RecordingConsumer(checkpointer);
+        checkpointer.replay(consumer);
+        Assertions.assertEquals(1, consumer.lines.size());
+        Assertions.assertEquals("b", consumer.lines.get(0));
+        checkpointer.close();
+    }
+
+    @Test
+    public void skipsRotatedAndTruncatedFiles() throws IOException {
+        Path file = write("a\nb\n");
+        previousRun();
+        // Same name, different file
+        Path replacement = Files.write(logs.resolve("replacement"), "x\ny\nz\n".getBytes(StandardCharsets.UTF_8));
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+        AckCheckpointer rotated = checkpointer();
+        RecordingConsumer consumer = new RecordingConsumer(rotated);
+        rotated.replay(consumer);
+        Assertions.assertTrue(consumer.lines.isEmpty());
+        rotated.close();
+
+        // Checkpoint of the rotated file was dropped with the commit
+        write("a\nb\n");
+        previousRun();
+        Files.write(file, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        AckCheckpointer truncated = checkpointer();
+        consumer = new RecordingConsumer(truncated);
+        truncated.replay(consumer);
+        Assertions.assertTrue(consumer.lines.isEmpty());
+        truncated.close();
+    }
+
+    @Test
+    public void rotationWhileRunningStartsNewCheckpoint() throws IOException {
+        Path file = write("a\nb\n");
+        AckCheckpointer checkpointer = checkpointer();
+        RecordingConsumer consumer = new RecordingConsumer(checkpointer);
+        consumer.accept(logs.toString(), FILENAME, "a".getBytes(StandardCharsets.UTF_8), 0, 2);
+        consumer.accept(logs.toString(), FILENAME, "b".getBytes(StandardCharsets.UTF_8), 2, 4);
+        FileCheckpoint rotated = checkpointer.get(logs.toString(), FILENAME, "team", 4);
+
+        // Kubelet moves the file aside and the reader starts the new one from the beginning
+        Path replacement = Files.write(logs.resolve("replacement"), "x\ny\n".getBytes(StandardCharsets.UTF_8));
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+        consumer.accept(logs.toString(), FILENAME, "x".getBytes(StandardCharsets.UTF_8), 0, 2);
+        consumer.accept(logs.toString(), FILENAME, "y".getBytes(StandardCharsets.UTF_8), 2, 4);
+        FileCheckpoint checkpoint = checkpointer.get(logs.toString(), FILENAME, "team", 4);
+        Assertions.assertNotSame(rotated, checkpoint);
+        Assertions.assertNotEquals(rotated.getFileKey(), checkpoint.getFileKey());
+        Assertions.assertEquals(1, checkpointer.getCheckpoints().size());
+        // Acknowledgements of the rotated file don't move the new checkpoint
+        consumer.published.get(1).acknowledge();
+        Assertions.assertEquals(0, checkpoint.getAcknowledgedOffset());
+        consumer.published.get(2).acknowledge();
+        Assertions.assertEquals(2, checkpoint.getAcknowledgedOffset());
+        Assertions.assertEquals(4, checkpoint.getReadOffset());
+        checkpointer.close();
+
+        // Committed checkpoint belongs to the new file, its unacknowledged line is replayed
+        AckCheckpointer restarted = checkpointer();
+        consumer = new RecordingConsumer(restarted);
+        restarted.replay(consumer);
+        Assertions.assertEquals(1, consumer.lines.size());
+        Assertions.assertEquals("y", consumer.lines.get(0));
+        restarted.close();
+    }
+
+    @Test
+    public void lagOnlyIgnoresInterval() {
+        // Checkpoint interval is not validated when only lag is enabled, it must not be used either
+        AckCheckpointer checkpointer = new AckCheckpointer(statesStore, false, 0, new MetricRegistry());
+        checkpointer.get(logs.toString(), FILENAME, "team", 0);
+        checkpointer.close();
+        Assertions.assertFalse(Files.exists(statesStore.resolve("ack-checkpoints.json")));
+    }
+}
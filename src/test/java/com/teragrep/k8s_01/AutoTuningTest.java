@@ -0,0 +1,40 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AutoTuningTest {
+    @Test
+    public void gaugesTest() {
+        MetricRegistry registry = new MetricRegistry();
+        AutoTuning tuning = new AutoTuning(new ContainerResources(4, 1024L * 1024 * 1024), 2, registry);
+        Assertions.assertEquals(8, tuning.getReadingThreads());
+        Assertions.assertEquals(4, tuning.getMaxLogReadingThreads());
+        Assertions.assertEquals(4, registry.getGauges().get("k8s01.autotune.cpus").getValue());
+        Assertions.assertEquals(8, registry.getGauges().get("k8s01.autotune.readers").getValue());
+        Assertions.assertEquals(4, registry.getGauges().get("k8s01.autotune.readers.perlogfile").getValue());
+        Assertions.assertEquals(1, registry.getGauges().get("k8s01.autotune.connections.min").getValue());
+        Assertions.assertEquals(8, registry.getGauges().get("k8s01.autotune.connections.max").getValue());
+        Gauge<?> queue = registry.getGauges().get("k8s01.autotune.queue");
+        Assertions.assertEquals(tuning.getQueueSize(), queue.getValue());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ContainerResourcesTest {
+    @TempDir
+    Path root;
+
+    private void write(String file, String content) throws IOException {
+        Path path = root.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, (content + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void v2LimitsTest() throws IOException {
+        write("cpu.max", "150000 100000");
+        write("memory.max", "536870912");
+        ContainerResources resources = ContainerResources.detect(root);
+        Assertions.assertEquals(1.5, resources.getCpuLimit(), 0.0001);
+        Assertions.assertEquals(536870912L, resources.getMemoryLimit());
+    }
+
+    @Test
+    public void v2UnlimitedTest() throws IOException {
+        write("cpu.max", "max 100000");
+        write("memory.max", "max");
+        ContainerResources resources = ContainerResources.detect(root);
+        Assertions.assertEquals(-1, resources.getCpuLimit(), 0.0001);
+        Assertions.assertEquals(-1L, resources.getMemoryLimit());
+    }
+
+    @Test
+    public void v1LimitsTest() throws IOException {
+        write("cpu/cpu.cfs_quota_us", "200000");
+        write("cpu/cpu.cfs_period_us", "100000");
+        write("memory/memory.limit_in_bytes", "1073741824");
+        ContainerResources resources = ContainerResources.detect(root);
+        Assertions.assertEquals(2.0, resources.getCpuLimit(), 0.0001);
+        Assertions.assertEquals(1073741824L, resources.getMemoryLimit());
+    }
+
+    @Test
+    public void v1CombinedControllerTest() throws IOException {
+        write("cpu,cpuacct/cpu.cfs_quota_us", "50000");
+        write("cpu,cpuacct/cpu.cfs_period_us", "100000");
+        write("memory/memory.limit_in_bytes", "268435456");
+        ContainerResources resources = ContainerResources.detect(root);
+        Assertions.assertEquals(0.5, resources.getCpuLimit(), 0.0001);
+        Assertions.assertEquals(268435456L, resources.getMemoryLimit());
+    }
+
+    @Test
+    public void v1UnlimitedTest() throws IOException {
+        write("cpu/cpu.cfs_quota_us", "-1");
+        write("cpu/cpu.cfs_period_us", "100000");
+        write("memory/memory.limit_in_bytes", "9223372036854771712");
+        ContainerResources resources = ContainerResources.detect(root);
+        Assertions.assertEquals(-1, resources.getCpuLimit(), 0.0001);
+        Assertions.assertEquals(-1L, resources.getMemoryLimit());
+    }
+
+    @Test
+    public void missingControllersTest() {
+        ContainerResources resources = ContainerResources.detect(root);
+        Assertions.assertEquals(-1, resources.getCpuLimit(), 0.0001);
+        Assertions.assertEquals(-1L, resources.getMemoryLimit());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class CriLogLineParserTest {
+    private final CriLogLineParser parser = new CriLogLineParser();
+    private byte[] line;
+
+    private void parse(String value) {
+        line = value.getBytes(StandardCharsets.UTF_8);
+        parser.parse(line);
+    }
+
+    private String message() {
+        return new String(parser.getMessageBytes(), parser.getMessageOffset(), parser.getMessageLength(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void parsesFullLine() {
+        parse("2023-04-05T06:07:08.123456789+03:00 stdout F hello  world ä\n");
+        Assertions.assertEquals("2023-04-05T06:07:08.123456789+03:00", parser.getTimestamp());
+        Assertions.assertEquals("stdout", parser.getStream());
+        Assertions.assertFalse(parser.isPartial());
+        Assertions.assertTrue(parser.hasMessage());
+        Assertions.assertEquals("hello  world ä", message());
+        // The message is a slice of the line, not a copy
+        Assertions.assertSame(line, parser.getMessageBytes());
+    }
+
+    @Test
+    public void parsesLineWithoutTerminator() {
+        parse("2023-04-05T06:07:08Z stderr F done");
+        Assertions.assertEquals("stderr", parser.getStream());
+        Assertions.assertEquals("done", message());
+    }
+
+    @Test
+    public void parsesPartialLine() {
+        parse("2023-04-05T06:07:08.1Z stdout P first part\n");
+        Assertions.assertTrue(parser.isPartial());
+        Assertions.assertEquals("first part", message());
+    }
+
+    @Test
+    public void parsesTags() {
+        parse("2023-04-05T06:07:08Z stdout F:extra:tags message\n");
+        Assertions.assertFalse(parser.isPartial());
+        Assertions.assertEquals("message", message());
+        parse("2023-04-05T06:07:08Z stdout P:extra message\n");
+        Assertions.assertTrue(parser.isPartial());
+    }
+
+    @Test
+    public void parsesEmptyMessage() {
+        parse("2023-04-05T06:07:08Z stdout F \n");
+        Assertions.assertEquals(0, parser.getMessageLength());
+        parse("2023-04-05T06:07:08Z stdout F\n");
+        Assertions.assertEquals(0, parser.getMessageLength());
+        Assertions.assertFalse(parser.isPartial());
+    }
+
+    @Test
+    public void keepsUnknownStreamNames() {
+        parse("2023-04-05T06:07:08Z custom F x\n");
+        Assertions.assertEquals("custom", parser.getStream());
+        parse("2023-04-05T06:07:08Z stdoux F x\n");
+        Assertions.assertEquals("stdoux", parser.getStream());
+    }
+
+    @Test
+    public void rejectsInvalidLines() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse(""));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("\n"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("garbage"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("2023-04-05T06:07:08Z stdout"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("2023-04-05T06:07:08Z stdout \n"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse(" stdout F x"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("2023-04-05T06:07:08Z  F x"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("2023-04-05T06:07:08Z stdout  x"));
+    }
+}
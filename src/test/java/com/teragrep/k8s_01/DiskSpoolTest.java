@@ -0,0 +1,157 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.config.AppConfigRelpSpool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class DiskSpoolTest {
+    @TempDir
+    Path directory;
+
+    private DiskSpool open(long maxBytes, int segmentSize) throws IOException {
+        return open(maxBytes, segmentSize, "oldest");
+    }
+
+    private DiskSpool open(long maxBytes, int segmentSize, String dropPolicy) throws IOException {
+        AppConfigRelpSpool config = new Gson().fromJson(
+                String.format("{\"enabled\": true, \"maxBytes\": %d, \"segmentSize\": %d, \"dropPolicy\": \"%s\"}", maxBytes, segmentSize, dropPolicy),
+                AppConfigRelpSpool.class
+        );
+        return new DiskSpool(directory, config, new MetricRegistry());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private int segmentFiles() throws IOException {
+        int count = 0;
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.spool")) {
+            for(Path ignored : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void replaysIdAndPayloadInOrder() throws IOException {
+        DiskSpool spool = open(1048576, 65536);
+        spool.append("id-1", bytes("first"));
+        spool.append("id-2", bytes("second"));
+        DiskSpool.Record first = spool.next();
+        DiskSpool.Record second = spool.next();
+        Assertions.assertEquals("id-1", first.getId());
+        Assertions.assertArrayEquals(bytes("first"), first.getPayload());
+        Assertions.assertEquals("id-2", second.getId());
+        Assertions.assertArrayEquals(bytes("second"), second.getPayload());
+        Assertions.assertNull(spool.next());
+    }
+
+    @Test
+    public void recordsStayUntilAcknowledged() throws IOException {
+        DiskSpool spool = open(1048576, 65536);
+        spool.append("id-1", bytes("first"));
+        spool.append("id-2", bytes("second"));
+        DiskSpool.Record first = spool.next();
+        DiskSpool.Record second = spool.next();
+        // Out of order acknowledgement does not remove the first record
+        second.acknowledge();
+        Assertions.assertFalse(spool.isEmpty());
+        first.acknowledge();
+        Assertions.assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void unacknowledgedRecordsAreReplayedAfterRestart() throws IOException {
+        DiskSpool spool = open(1048576, 65536);
+        spool.append("id-1", bytes("first"));
+        spool.append("id-2", bytes("second"));
+        spool.append("id-3", bytes("third"));
+        spool.next().acknowledge();
+        spool.next(); // In flight when the process stops
+        spool.next().acknowledge();
+
+        DiskSpool recovered = open(1048576, 65536);
+        DiskSpool.Record record = recovered.next();
+        Assertions.assertEquals("id-2", record.getId());
+        Assertions.assertArrayEquals(bytes("second"), record.getPayload());
+        // Acknowledged after the gap, but the read position is persisted only up to the gap
+        Assertions.assertEquals("id-3", recovered.next().getId());
+        Assertions.assertNull(recovered.next());
+    }
+
+    @Test
+    public void fullyAcknowledgedSegmentsAreDeleted() throws IOException {
+        DiskSpool spool = open(1048576, 64);
+        spool.append("id-1", new byte[40]);
+        spool.append("id-2", new byte[40]);
+        Assertions.assertEquals(2, segmentFiles());
+        spool.next().acknowledge();
+        Assertions.assertEquals(1, segmentFiles());
+    }
+
+    @Test
+    public void dropOldestFreesSegmentFiles() throws IOException {
+        DiskSpool spool = open(128, 64);
+        for(int i = 0; i < 10; i++) {
+            spool.append("id-" + i, new byte[40]);
+        }
+        Assertions.assertEquals(2, segmentFiles());
+        Assertions.assertEquals("id-8", spool.next().getId());
+    }
+
+    @Test
+    public void blockRefusesEventsWhenFull() throws IOException {
+        DiskSpool spool = open(128, 64, "block");
+        Assertions.assertTrue(spool.append("id-1", new byte[40]));
+        Assertions.assertTrue(spool.append("id-2", new byte[40]));
+        Assertions.assertFalse(spool.append("id-3", new byte[40]));
+        // Nothing was dropped to make room
+        Assertions.assertEquals("id-1", spool.next().getId());
+        Assertions.assertEquals(2, segmentFiles());
+    }
+
+    @Test
+    public void blockAcceptsEventsOnceReplayed() throws IOException {
+        DiskSpool spool = open(128, 64, "block");
+        spool.append("id-1", new byte[40]);
+        spool.append("id-2", new byte[40]);
+        Assertions.assertFalse(spool.append("id-3", new byte[40]));
+        spool.next().acknowledge();
+        Assertions.assertTrue(spool.append("id-3", new byte[40]));
+    }
+
+    @Test
+    public void blockRefusesEventsLargerThanSegment() throws IOException {
+        DiskSpool spool = open(1048576, 64, "block");
+        Assertions.assertFalse(spool.append("id-1", new byte[100]));
+        Assertions.assertTrue(spool.isEmpty());
+    }
+}
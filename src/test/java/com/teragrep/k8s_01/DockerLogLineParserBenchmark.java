@@ -0,0 +1,106 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares DockerLogLineParser with the Gson mapping it replaced, producing the message bytes the encoder needs.
+ * Not run by surefire, start with:
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main DockerLogLineParserBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DockerLogLineParserBenchmark {
+    private static final Gson gson = new Gson();
+
+    @Param({"plain", "escaped", "unicode", "long"})
+    public String line;
+
+    private byte[] record;
+    private final DockerLogLineParser parser = new DockerLogLineParser();
+
+    /* The POJO the Gson path decoded lines into */
+    private static class GsonLogLine {
+        private String log;
+        private String stream;
+        private String time;
+    }
+
+    @Setup
+    public void setup() {
+        String log;
+        switch (line) {
+            case "plain":
+                log = "2023-04-05 06:07:08,123 INFO  [main] com.example.Service - Request handled in 12 ms\\n";
+                break;
+            case "escaped":
+                log = "{\\\"level\\\":\\\"info\\\",\\\"msg\\\":\\\"request\\\\tdone\\\",\\\"path\\\":\\\"\\/api\\/v1\\\"}\\n";
+                break;
+            case "unicode":
+                log = "Käyttäjä kirjautui \\u00e4\\u00f6 \\ud83d\\ude00 漢字\\n";
+                break;
+            case "long":
+                StringBuilder builder = new StringBuilder();
+                while(builder.length() < 8192) {
+                    builder.append("at com.example.Service.handle(Service.java:42)\\n\\t");
+                }
+                log = builder.toString();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown line type " + line);
+        }
+        record = ("{\"log\":\"" + log + "\",\"stream\":\"stdout\",\"time\":\"2023-04-05T06:07:08.123456789Z\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void gson(Blackhole blackhole) {
+        GsonLogLine log = gson.fromJson(new String(record, StandardCharsets.UTF_8), GsonLogLine.class);
+        blackhole.consume(log.log.getBytes(StandardCharsets.UTF_8));
+        blackhole.consume(log.stream);
+        blackhole.consume(log.time);
+    }
+
+    @Benchmark
+    public void parser(Blackhole blackhole) {
+        parser.parse(record);
+        blackhole.consume(parser.getMessageBytes());
+        blackhole.consume(parser.getMessageLength());
+        blackhole.consume(parser.getStream());
+        blackhole.consume(parser.getTimestamp());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/* Feeds generated lines to both DockerLogLineParser and the Gson mapping it replaced, the results must be identical */
+public class DockerLogLineParserGsonTest {
+    private static final int LINES = 20000;
+    private static final Gson gson = new Gson();
+    private static final String[] ESCAPES = {"\\\"", "\\\\", "\\/", "\\b", "\\f", "\\n", "\\r", "\\t"};
+    private static final String[] RAW = {"\u00e4", "\u00e9", "\u6f22", "\ud83d\ude00", "\u20ac"};
+    private static final byte[][] MALFORMED = {
+            {(byte) 0xFF},
+            {(byte) 0xC3},
+            {(byte) 0xE2, (byte) 0x82},
+            {(byte) 0xED, (byte) 0xA0, (byte) 0x80},
+            {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+            {(byte) 0x80}
+    };
+    private static final String[] UNKNOWN = {
+            "\"attrs\":{\"tag\":\"}\",\"list\":[1,\"]\",{}]}",
+            "\"number\":-12.5e3",
+            "\"flag\":false",
+            "\"nothing\":null",
+            "\"escaped\":\"\\\"\\u0041\""
+    };
+
+    /* The POJO the Gson path decoded lines into */
+    private static class GsonLogLine {
+        private String log;
+        private String stream;
+        private String time;
+    }
+
+    @Test
+    public void matchesGson() {
+        Random random = new Random(5424);
+        DockerLogLineParser parser = new DockerLogLineParser();
+        for(int i = 0; i < LINES; i++) {
+            byte[] line = line(random);
+            GsonLogLine expected = gson.fromJson(new String(line, StandardCharsets.UTF_8), GsonLogLine.class);
+            parser.parse(line);
+            String description = new String(line, StandardCharsets.UTF_8);
+            Assertions.assertEquals(expected.log != null, parser.hasMessage(), description);
+            if(expected.log != null) {
+                byte[] actual = Arrays.copyOfRange(parser.getMessageBytes(), parser.getMessageOffset(), parser.getMessageOffset() + parser.getMessageLength());
+                Assertions.assertArrayEquals(expected.log.getBytes(StandardCharsets.UTF_8), actual, description);
+            }
+            Assertions.assertEquals(expected.stream, parser.getStream(), description);
+            Assertions.assertEquals(expected.time, parser.getTimestamp(), description);
+        }
+    }
+
+    private static byte[] line(Random random) {
+        List<byte[]> fields = new ArrayList<>();
+        int logKind = random.nextInt(10);
+        if(logKind == 0) {
+            fields.add(ascii("\"log\":null"));
+        }
+        else if(logKind == 1) {
+            fields.add(ascii("\"log\":" + random.nextInt(1000)));
+        }
+        else if(logKind != 2) {
+            fields.add(concat(ascii("\"log\":\""), logValue(random), ascii("\"")));
+        }
+        if(random.nextInt(8) != 0) {
+            fields.add(ascii(random.nextBoolean() ? "\"stream\":\"stdout\"" : random.nextBoolean() ? "\"stream\":\"stderr\"" : "\"stream\":\"other\\u00e4\""));
+        }
+        if(random.nextInt(8) != 0) {
+            fields.add(ascii("\"time\":\"2023-04-05T06:07:08." + random.nextInt(1000000000) + "Z\""));
+        }
+        for(int i = random.nextInt(3); i > 0; i--) {
+            fields.add(ascii(UNKNOWN[random.nextInt(UNKNOWN.length)]));
+        }
+        Collections.shuffle(fields, random);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, ascii(whitespace(random) + "{" + whitespace(random)));
+        for(int i = 0; i < fields.size(); i++) {
+            if(i > 0) {
+                write(out, ascii(whitespace(random) + "," + whitespace(random)));
+            }
+            write(out, fields.get(i));
+        }
+        write(out, ascii(whitespace(random) + "}" + whitespace(random)));
+        return out.toByteArray();
+    }
+
+    private static byte[] logValue(Random random) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(int parts = random.nextInt(12); parts > 0; parts--) {
+            switch (random.nextInt(7)) {
+                case 0:
+                    write(out, ascii(ESCAPES[random.nextInt(ESCAPES.length)]));
+                    break;
+                case 1:
+                    write(out, ascii(unicodeEscape(random)));
+                    break;
+                case 2:
+                    write(out, RAW[random.nextInt(RAW.length)].getBytes(StandardCharsets.UTF_8));
+                    break;
+                case 3:
+                    write(out, MALFORMED[random.nextInt(MALFORMED.length)]);
+                    break;
+                default:
+                    StringBuilder plain = new StringBuilder();
+                    for(int i = random.nextInt(20); i > 0; i--) {
+                        char c = (char) (' ' + random.nextInt(95));
+                        plain.append(c == '"' || c == '\\' ? '_' : c);
+                    }
+                    write(out, ascii(plain.toString()));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Paired, lone and reversed surrogates as well as plain code units
+    private static String unicodeEscape(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return "\\ud83d\\ude00";
+            case 1:
+                return String.format("\\u%04x", 0xD800 + random.nextInt(0x400));
+            case 2:
+                return String.format("\\u%04X", 0xDC00 + random.nextInt(0x400));
+            case 3:
+                return "\\ude00\\ud83d";
+            default:
+                return String.format("\\u%04x", random.nextInt(0xD800));
+        }
+    }
+
+    private static String whitespace(Random random) {
+        return random.nextInt(4) == 0 ? " \t" : "";
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] part : parts) {
+            write(out, part);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class DockerLogLineParserTest {
+    private final DockerLogLineParser parser = new DockerLogLineParser();
+
+    private void parse(String line) {
+        parser.parse(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private byte[] message() {
+        return Arrays.copyOfRange(parser.getMessageBytes(), parser.getMessageOffset(), parser.getMessageOffset() + parser.getMessageLength());
+    }
+
+    private String messageString() {
+        return new String(message(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void parsesFields() {
+        parse("{\"log\":\"hello world\\n\",\"stream\":\"stdout\",\"time\":\"2023-04-05T06:07:08.123456789Z\"}");
+        Assertions.assertTrue(parser.hasMessage());
+        Assertions.assertEquals("hello world\n", messageString());
+        Assertions.assertEquals("stdout", parser.getStream());
+        Assertions.assertEquals("2023-04-05T06:07:08.123456789Z", parser.getTimestamp());
+        Assertions.assertFalse(parser.isPartial());
+    }
+
+    @Test
+    public void unescapesSimpleEscapes() {
+        parse("{\"log\":\"q\\\" b\\\\ s\\/ \\b\\f\\n\\r\\t\"}");
+        Assertions.assertEquals("q\" b\\ s/ \b\f\n\r\t", messageString());
+    }
+
+    @Test
+    public void unescapesUnicode() {
+        parse("{\"log\":\"\\u0041\\u00e9\\u6F22\"}");
+        Assertions.assertEquals("A\u00e9\u6f22", messageString());
+    }
+
+    @Test
+    public void combinesSurrogatePairs() {
+        parse("{\"log\":\"\\ud83d\\ude00\"}");
+        Assertions.assertArrayEquals(new byte[]{(byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80}, message());
+    }
+
+    @Test
+    public void replacesUnpairedSurrogates() {
+        parse("{\"log\":\"\\ud83dx\"}");
+        Assertions.assertEquals("?x", messageString());
+        parse("{\"log\":\"\\ude00\"}");
+        Assertions.assertEquals("?", messageString());
+        parse("{\"log\":\"\\ud83d\\u0041\"}");
+        Assertions.assertEquals("?A", messageString());
+        parse("{\"log\":\"\\ud83d\\ud83d\\ude00\"}");
+        Assertions.assertEquals("?\ud83d\ude00", messageString());
+    }
+
+    @Test
+    public void keepsRawUtf8() {
+        parse("{\"log\":\"\u00e4\u6f22\ud83d\ude00\"}");
+        Assertions.assertEquals("\u00e4\u6f22\ud83d\ude00", messageString());
+    }
+
+    @Test
+    public void replacesMalformedUtf8() {
+        byte[] line = new byte[]{'{', '"', 'l', 'o', 'g', '"', ':', '"', 'a', (byte) 0xFF, (byte) 0xC3, 'b', '"', '}'};
+        parser.parse(line);
+        Assertions.assertEquals("a\ufffd\ufffdb", messageString());
+    }
+
+    @Test
+    public void reportsMissingFieldsAsNull() {
+        parse("{}");
+        Assertions.assertFalse(parser.hasMessage());
+        Assertions.assertNull(parser.getStream());
+        Assertions.assertNull(parser.getTimestamp());
+        parse("{\"log\":null,\"stream\":null,\"time\":null}");
+        Assertions.assertFalse(parser.hasMessage());
+        Assertions.assertNull(parser.getStream());
+        Assertions.assertNull(parser.getTimestamp());
+        parse("{\"stream\":\"stderr\"}");
+        Assertions.assertFalse(parser.hasMessage());
+        Assertions.assertEquals("stderr", parser.getStream());
+    }
+
+    @Test
+    public void keepsLiteralsAsWritten() {
+        parse("{\"log\":12.50,\"stream\":true}");
+        Assertions.assertEquals("12.50", messageString());
+        Assertions.assertEquals("true", parser.getStream());
+    }
+
+    @Test
+    public void skipsUnknownFields() {
+        parse(" { \"attrs\" : {\"a\":\"}\",\"b\":[1,\"]\",{\"c\":null}]}, \"n\": -1.5e3 , \"log\" : \"x\" , \"s\":\"\\\"\" } ");
+        Assertions.assertEquals("x", messageString());
+    }
+
+    @Test
+    public void resetsBetweenLines() {
+        parse("{\"log\":\"first\",\"stream\":\"stdout\",\"time\":\"t\"}");
+        parse("{\"log\":\"2\"}");
+        Assertions.assertEquals("2", messageString());
+        Assertions.assertNull(parser.getStream());
+        Assertions.assertNull(parser.getTimestamp());
+    }
+
+    @Test
+    public void detectsSplitLines() {
+        char[] split = new char[16 * 1024];
+        Arrays.fill(split, 'a');
+        parse("{\"log\":\"" + new String(split) + "\"}");
+        Assertions.assertTrue(parser.isPartial());
+        split[split.length - 1] = '\n';
+        parse("{\"log\":\"" + new String(split, 0, split.length - 1) + "\\n\"}");
+        Assertions.assertFalse(parser.isPartial());
+    }
+
+    @Test
+    public void rejectsTrailingGarbage() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("{\"log\":\"x\"}x"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("{\"log\":\"x\"}{}"));
+        Assertions.assertDoesNotThrow(() -> parse("{\"log\":\"x\"}\r\n"));
+    }
+
+    @Test
+    public void rejectsInvalidLines() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse(""));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("not json"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("[\"log\"]"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("{\"log\":\"x\""));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("{\"log\":\"unterminated}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("{\"log\":\"\\x\"}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("{\"log\":\"\\u12\"}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("{\"log\":\"\\uzzzz\"}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("{\"log\":{\"nested\":1}}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("{\"log\" \"x\"}"));
+    }
+}
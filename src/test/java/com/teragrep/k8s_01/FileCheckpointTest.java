@@ -0,0 +1,89 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FileCheckpointTest {
+    private final FileCheckpoint checkpoint = new FileCheckpoint("/var/log/containers", "app.log", "1:2", "team", 0);
+
+    @Test
+    public void noEventsHaveNoLag() {
+        Assertions.assertEquals(0, checkpoint.getEventLag(10_000));
+    }
+
+    @Test
+    public void lagFromOldestPendingBeforeAcknowledgement() {
+        checkpoint.track(10, "stdout", 1_000);
+        checkpoint.track(20, "stdout", 2_000);
+        Assertions.assertEquals(9_000, checkpoint.getEventLag(10_000));
+    }
+
+    @Test
+    public void lagFromAcknowledgedWhileEventsArePending() {
+        checkpoint.track(10, "stdout", 1_000).acknowledge();
+        checkpoint.track(20, "stdout", 2_000);
+        Assertions.assertEquals(9_000, checkpoint.getEventLag(10_000));
+    }
+
+    @Test
+    public void lagFromAcknowledgedWhenNothingIsPending() {
+        // A file that stopped receiving events keeps aging instead of dropping to 0
+        checkpoint.track(10, "stdout", 1_000).acknowledge();
+        checkpoint.track(20, "stdout", 2_000).acknowledge();
+        Assertions.assertEquals(20, checkpoint.getAcknowledgedOffset());
+        Assertions.assertEquals(8_000, checkpoint.getEventLag(10_000));
+        Assertions.assertEquals(0, checkpoint.getEventLag(1_500));
+    }
+
+    @Test
+    public void heldFragmentsAcknowledgedWithCompletingRecord() {
+        checkpoint.hold(10, "stdout");
+        checkpoint.hold(20, "stdout");
+        FileCheckpoint.Pending other = checkpoint.track(30, "stderr", 0);
+        // Line flushed by the final fragment or at the maximum size
+        FileCheckpoint.Pending line = checkpoint.track(40, "stdout", 0);
+        other.acknowledge();
+        Assertions.assertEquals(0, checkpoint.getAcknowledgedOffset());
+        line.acknowledge();
+        Assertions.assertEquals(40, checkpoint.getAcknowledgedOffset());
+    }
+
+    @Test
+    public void releasedFragmentsDontBlockAcknowledgement() {
+        checkpoint.hold(10, "stdout");
+        checkpoint.hold(20, "stderr");
+        checkpoint.track(30, "stderr", 0).acknowledge();
+        Assertions.assertEquals(0, checkpoint.getAcknowledgedOffset());
+        // The stdout line failed after it was assembled and is never tracked
+        checkpoint.release("stdout");
+        Assertions.assertEquals(30, checkpoint.getAcknowledgedOffset());
+
+        FileCheckpoint abandoned = new FileCheckpoint("/var/log/containers", "app.log", "1:2", "team", 0);
+        abandoned.hold(10, "stdout");
+        abandoned.hold(20, "stderr");
+        abandoned.track(30, "stdout", 0).acknowledge();
+        Assertions.assertEquals(10, abandoned.getAcknowledgedOffset());
+        // Partial lines forgotten with the file state are never completed
+        abandoned.release();
+        Assertions.assertEquals(30, abandoned.getAcknowledgedOffset());
+        abandoned.track(40, "stderr", 0).acknowledge();
+        Assertions.assertEquals(40, abandoned.getAcknowledgedOffset());
+    }
+}
@@ -0,0 +1,228 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.teragrep.k8s_01.config.AppConfigKubernetes;
+import io.kubernetes.client.openapi.ApiClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/* Runs the caching client against a stub API server whose objects can be deleted and recreated */
+public class KubernetesCachingAPIClientTest {
+    private static final PodKey KEY = new PodKey("team", "app-0");
+    private static final String POD_PATH = "/api/v1/namespaces/team/pods/app-0";
+    private static final String NAMESPACE_PATH = "/api/v1/namespaces/team";
+    // Objects served by path, a missing path is answered with 404
+    private final Map<String, String> objects = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final List<LogRecord> refreshWarnings = new CopyOnWriteArrayList<>();
+    private final Logger cacheLogger = Logger.getLogger(CacheBuilder.class.getPackage().getName() + ".LocalCache");
+    private final Handler refreshWarningHandler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            if(record.getLevel().intValue() >= Level.WARNING.intValue()) {
+                refreshWarnings.add(record);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private HttpServer server;
+    private KubernetesCachingAPIClient client;
+
+    @TempDir
+    Path statesStore;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v1/namespaces", this::serve);
+        server.start();
+        cacheLogger.addHandler(refreshWarningHandler);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        if(client != null) {
+            client.close();
+        }
+        server.stop(0);
+        cacheLogger.removeHandler(refreshWarningHandler);
+    }
+
+    private void start(int expireInterval, int idleExpireInterval) throws IOException {
+        AppConfigKubernetes config = new Gson().fromJson(
+                "{\"cacheExpireInterval\": " + expireInterval + ", \"cacheIdleExpireInterval\": " + idleExpireInterval
+                        + ", \"cacheMaxEntries\": 100, \"cacheNegativeExpireInterval\": 1, \"cacheTombstoneInterval\": 3600}",
+                AppConfigKubernetes.class
+        );
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath("http://127.0.0.1:" + server.getAddress().getPort());
+        client = new KubernetesCachingAPIClient(config, apiClient.getBasePath(), apiClient, new MetricRegistry(), statesStore);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+        String object = objects.get(path);
+        int code = 200;
+        if(object == null) {
+            code = 404;
+            object = "{\"kind\":\"Status\",\"apiVersion\":\"v1\",\"status\":\"Failure\",\"reason\":\"NotFound\",\"code\":404}";
+        }
+        byte[] body = object.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, body.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private int requests(String path) {
+        AtomicInteger count = requests.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    private static String pod(String uid, String version) {
+        return "{\"kind\":\"Pod\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"app-0\",\"namespace\":\"team\",\"uid\":\"" + uid
+                + "\",\"creationTimestamp\":\"2023-01-01T00:00:00Z\",\"labels\":{\"version\":\"" + version
+                + "\"}},\"spec\":{\"nodeName\":\"node-1\",\"containers\":[]}}";
+    }
+
+    private static String namespace(String uid) {
+        return "{\"kind\":\"Namespace\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"team\",\"uid\":\"" + uid + "\",\"labels\":{}}}";
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        while(!condition.getAsBoolean()) {
+            if(System.nanoTime() > deadline) {
+                Assertions.fail("Condition was not met in time");
+            }
+            try {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Assertions.fail("Interrupted while waiting");
+            }
+        }
+    }
+
+    // Refreshes run in the background after the expire interval, a request to the API tells that one has happened
+    private void awaitRefresh(String path, BooleanSupplier get) {
+        int before = requests(path);
+        await(() -> get.getAsBoolean() && requests(path) > before);
+    }
+
+    @Test
+    public void recreatedPodIsNotShadowedByTombstone() throws IOException {
+        objects.put(POD_PATH, pod("uid-1", "v1"));
+        start(1, 3600);
+        Assertions.assertEquals("uid-1", client.getPod(KEY).getPodId());
+        // Deleted, the refresh keeps serving the last known metadata
+        objects.remove(POD_PATH);
+        awaitRefresh(POD_PATH, () -> client.getPod(KEY) != null);
+        Assertions.assertEquals("uid-1", client.getPod(KEY).getPodId());
+        // Recreated under the same name, as StatefulSet pods are
+        objects.put(POD_PATH, pod("uid-2", "v2"));
+        await(() -> "uid-2".equals(client.getPod(KEY).getPodId()));
+        Assertions.assertEquals("v2", client.getPod(KEY).getLabels().get("version"));
+    }
+
+    @Test
+    public void recreatedNamespaceIsNotShadowedByTombstone() throws IOException {
+        objects.put(NAMESPACE_PATH, namespace("uid-1"));
+        start(1, 3600);
+        Assertions.assertEquals("uid-1", client.getNamespace("team").getUid());
+        objects.remove(NAMESPACE_PATH);
+        awaitRefresh(NAMESPACE_PATH, () -> client.getNamespace("team") != null);
+        objects.put(NAMESPACE_PATH, namespace("uid-2"));
+        await(() -> "uid-2".equals(client.getNamespace("team").getUid()));
+    }
+
+    @Test
+    public void deletedPodIsServedFromTombstoneAfterEviction() throws IOException, InterruptedException {
+        objects.put(POD_PATH, pod("uid-1", "v1"));
+        start(1, 2);
+        Assertions.assertEquals("uid-1", client.getPod(KEY).getPodId());
+        objects.remove(POD_PATH);
+        awaitRefresh(POD_PATH, () -> client.getPod(KEY) != null);
+        // Idle until evicted, loading again gets a 404 and falls back to the tombstone instead of a placeholder
+        int before = requests(POD_PATH);
+        Thread.sleep(2500);
+        Assertions.assertEquals("uid-1", client.getPod(KEY).getPodId());
+        Assertions.assertTrue(requests(POD_PATH) > before);
+        Assertions.assertTrue(refreshWarnings.isEmpty(), "Handled 404 was logged as a refresh failure: " + refreshWarnings);
+    }
+
+    @Test
+    public void deletedPodRefreshIsNotLoggedAsFailure() throws IOException {
+        objects.put(POD_PATH, pod("uid-1", "v1"));
+        start(1, 3600);
+        client.getPod(KEY);
+        objects.remove(POD_PATH);
+        awaitRefresh(POD_PATH, () -> client.getPod(KEY) != null);
+        // Let a few more refreshes fail with 404
+        int before = requests(POD_PATH);
+        await(() -> client.getPod(KEY) != null && requests(POD_PATH) >= before + 2);
+        Assertions.assertTrue(refreshWarnings.isEmpty(), "Handled 404 was logged as a refresh failure: " + refreshWarnings);
+    }
+
+    @Test
+    public void missingPodGetsPlaceholderWithoutCallingApiEveryTime() throws IOException {
+        start(3600, 3600);
+        Assertions.assertNull(client.getPod(KEY).getPodId());
+        Assertions.assertNull(client.getPod(KEY).getLabels());
+        Assertions.assertEquals(1, requests(POD_PATH));
+        // Created after the placeholder expires
+        objects.put(POD_PATH, pod("uid-1", "v1"));
+        await(() -> "uid-1".equals(client.getPod(KEY).getPodId()));
+    }
+}
@@ -0,0 +1,243 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.teragrep.k8s_01.metadata.NamespaceMetadataContainer;
+import com.teragrep.k8s_01.metadata.PodMetadataContainer;
+import io.kubernetes.client.openapi.ApiClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/* Runs the watcher against a stub API server that serves list responses and streams queued watch events */
+public class KubernetesMetadataWatcherTest {
+    private static final String NODE = "node-1";
+    private static final String ERROR_GONE = "{\"type\":\"ERROR\",\"object\":{\"kind\":\"Status\",\"apiVersion\":\"v1\",\"status\":\"Failure\",\"reason\":\"Expired\",\"message\":\"too old resource version\",\"code\":410}}";
+    private StubResource pods;
+    private StubResource namespaces;
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile boolean serving;
+    private KubernetesMetadataWatcher watcher;
+    private final List<PodMetadataContainer> deletedPods = new CopyOnWriteArrayList<>();
+    private final List<NamespaceMetadataContainer> deletedNamespaces = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        pods = new StubResource(podList("1"));
+        namespaces = new StubResource(namespaceList("1"));
+        serving = true;
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v1/pods", exchange -> serve(exchange, pods));
+        server.createContext("/api/v1/namespaces", exchange -> serve(exchange, namespaces));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        if(watcher != null) {
+            watcher.stop();
+        }
+        serving = false;
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void start(long resyncPeriodMillis) {
+        ApiClient client = new ApiClient();
+        client.setBasePath("http://127.0.0.1:" + server.getAddress().getPort());
+        client.setReadTimeout(0);
+        watcher = new KubernetesMetadataWatcher(client, NODE, resyncPeriodMillis, deletedPods::add, deletedNamespaces::add);
+        watcher.start();
+        await(watcher::hasSynced);
+    }
+
+    @Test
+    public void listPopulatesStore() {
+        pods.list = podList("1", pod("app", "uid-app", "1", "v1"));
+        namespaces.list = namespaceList("1", namespace("team", "uid-team", "1"));
+        start(0);
+        // Event handlers run after the informer reports synced
+        await(() -> watcher.getPod(new PodKey("team", "app")) != null && watcher.getNamespace("team") != null);
+        PodMetadataContainer pod = watcher.getPod(new PodKey("team", "app"));
+        Assertions.assertEquals("uid-app", pod.getPodId());
+        Assertions.assertEquals(NODE, pod.getHost());
+        Assertions.assertEquals("v1", pod.getLabels().get("version"));
+        Assertions.assertEquals("uid-team", watcher.getNamespace("team").getUid());
+        Assertions.assertNull(watcher.getPod(new PodKey("team", "missing")));
+        Assertions.assertTrue(pods.lastListQuery.contains("fieldSelector=spec.nodeName%3D" + NODE) || pods.lastListQuery.contains("fieldSelector=spec.nodeName=" + NODE));
+    }
+
+    @Test
+    public void watchAddsAndUpdates() {
+        start(0);
+        PodKey key = new PodKey("team", "app");
+        pods.events.add(event("ADDED", pod("app", "uid-app", "2", "v1")));
+        await(() -> watcher.getPod(key) != null);
+        pods.events.add(event("MODIFIED", pod("app", "uid-app", "3", "v2")));
+        await(() -> "v2".equals(watcher.getPod(key).getLabels().get("version")));
+        namespaces.events.add(event("ADDED", namespace("team", "uid-team", "2")));
+        await(() -> watcher.getNamespace("team") != null);
+        Assertions.assertTrue(deletedPods.isEmpty());
+    }
+
+    @Test
+    public void watchDeleteHandsOverTombstone() {
+        pods.list = podList("1", pod("app", "uid-app", "1", "v1"));
+        namespaces.list = namespaceList("1", namespace("team", "uid-team", "1"));
+        start(0);
+        await(() -> watcher.getPod(new PodKey("team", "app")) != null && watcher.getNamespace("team") != null);
+        pods.events.add(event("DELETED", pod("app", "uid-app", "2", "v1")));
+        namespaces.events.add(event("DELETED", namespace("team", "uid-team", "2")));
+        await(() -> deletedPods.size() == 1 && deletedNamespaces.size() == 1);
+        Assertions.assertEquals("uid-app", deletedPods.get(0).getPodId());
+        Assertions.assertEquals("uid-team", deletedNamespaces.get(0).getUid());
+        Assertions.assertNull(watcher.getPod(new PodKey("team", "app")));
+        Assertions.assertNull(watcher.getNamespace("team"));
+    }
+
+    @Test
+    public void relistRemovesPodsMissedByWatch() {
+        pods.list = podList("1", pod("app", "uid-app", "1", "v1"), pod("other", "uid-other", "1", "v1"));
+        start(0);
+        await(() -> watcher.getPod(new PodKey("team", "app")) != null);
+        // The pod goes away while the watch is broken, the relist after 410 Gone no longer contains it
+        pods.list = podList("5", pod("other", "uid-other", "1", "v1"));
+        pods.events.add(ERROR_GONE);
+        await(() -> deletedPods.size() == 1);
+        Assertions.assertEquals("uid-app", deletedPods.get(0).getPodId());
+        Assertions.assertNull(watcher.getPod(new PodKey("team", "app")));
+        Assertions.assertNotNull(watcher.getPod(new PodKey("team", "other")));
+        Assertions.assertTrue(pods.lists >= 2);
+    }
+
+    @Test
+    public void resyncRefreshesStore() {
+        pods.list = podList("1", pod("app", "uid-app", "1", "v1"));
+        start(100);
+        PodKey key = new PodKey("team", "app");
+        await(() -> watcher.getPod(key) != null);
+        PodMetadataContainer first = watcher.getPod(key);
+        await(() -> watcher.getPod(key) != first);
+        Assertions.assertEquals("uid-app", watcher.getPod(key).getPodId());
+        Assertions.assertTrue(deletedPods.isEmpty());
+    }
+
+    private void serve(HttpExchange exchange, StubResource resource) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if(query == null || !query.contains("watch=true")) {
+            resource.lists++;
+            resource.lastListQuery = query == null ? "" : query;
+            byte[] body = resource.list.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            return;
+        }
+        // Chunked response that stays open until an error event ends it or the server stops
+        exchange.sendResponseHeaders(200, 0);
+        try(OutputStream out = exchange.getResponseBody()) {
+            while(serving) {
+                String line = resource.events.poll(50, TimeUnit.MILLISECONDS);
+                if(line == null) {
+                    continue;
+                }
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                if(line.equals(ERROR_GONE)) {
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        while(!condition.getAsBoolean()) {
+            if(System.nanoTime() > deadline) {
+                Assertions.fail("Condition was not met in time");
+            }
+            try {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Assertions.fail("Interrupted while waiting");
+            }
+        }
+    }
+
+    private static String pod(String name, String uid, String resourceVersion, String version) {
+        return "{\"kind\":\"Pod\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"" + name + "\",\"namespace\":\"team\",\"uid\":\"" + uid
+                + "\",\"resourceVersion\":\"" + resourceVersion + "\",\"creationTimestamp\":\"2023-01-01T00:00:00Z\",\"labels\":{\"version\":\""
+                + version + "\"}},\"spec\":{\"nodeName\":\"" + NODE + "\",\"containers\":[]}}";
+    }
+
+    private static String namespace(String name, String uid, String resourceVersion) {
+        return "{\"kind\":\"Namespace\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"" + name + "\",\"uid\":\"" + uid
+                + "\",\"resourceVersion\":\"" + resourceVersion + "\",\"labels\":{}}}";
+    }
+
+    private static String podList(String resourceVersion, String... items) {
+        return "{\"kind\":\"PodList\",\"apiVersion\":\"v1\",\"metadata\":{\"resourceVersion\":\"" + resourceVersion
+                + "\"},\"items\":[" + String.join(",", items) + "]}";
+    }
+
+    private static String namespaceList(String resourceVersion, String... items) {
+        return "{\"kind\":\"NamespaceList\",\"apiVersion\":\"v1\",\"metadata\":{\"resourceVersion\":\"" + resourceVersion
+                + "\"},\"items\":[" + String.join(",", items) + "]}";
+    }
+
+    private static String event(String type, String object) {
+        return "{\"type\":\"" + type + "\",\"object\":" + object + "}";
+    }
+
+    private static final class StubResource {
+        private volatile String list;
+        private volatile String lastListQuery = "";
+        private volatile int lists = 0;
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        StubResource(String list) {
+            this.list = list;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.config.AppConfigLabelSelector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LabelSelectorTest {
+    private static AppConfigLabelSelector config(String json) {
+        return new Gson().fromJson(json, AppConfigLabelSelector.class);
+    }
+
+    private static LabelSelector compile(String json) {
+        AppConfigLabelSelector config = config(json);
+        Assertions.assertDoesNotThrow(config::validate);
+        return LabelSelector.compile(config);
+    }
+
+    private static Map<String, String> labels(String... keyValues) {
+        Map<String, String> labels = new HashMap<>();
+        for(int i = 0; i < keyValues.length; i += 2) {
+            labels.put(keyValues[i], keyValues[i + 1]);
+        }
+        return labels;
+    }
+
+    private static void assertInvalid(String json) {
+        Assertions.assertThrows(InvalidConfigurationException.class, config(json)::validate, json);
+    }
+
+    @Test
+    public void emptySelectorMatchesEverything() {
+        LabelSelector selector = compile("{}");
+        Assertions.assertTrue(selector.isEmpty());
+        Assertions.assertTrue(selector.matches(labels("app", "a")));
+        Assertions.assertTrue(selector.matches(Collections.emptyMap()));
+        Assertions.assertTrue(selector.matches(null));
+        Assertions.assertTrue(compile("{\"matchLabels\": {}, \"matchExpressions\": []}").isEmpty());
+    }
+
+    @Test
+    public void matchLabels() {
+        LabelSelector selector = compile("{\"matchLabels\": {\"app\": \"web\", \"tier\": \"front\"}}");
+        Assertions.assertFalse(selector.isEmpty());
+        Assertions.assertTrue(selector.matches(labels("app", "web", "tier", "front", "other", "x")));
+        Assertions.assertFalse(selector.matches(labels("app", "web")));
+        Assertions.assertFalse(selector.matches(labels("app", "web", "tier", "back")));
+        Assertions.assertFalse(selector.matches(labels("App", "web", "tier", "front")));
+        Assertions.assertFalse(selector.matches(null));
+    }
+
+    @Test
+    public void matchLabelWithEmptyValue() {
+        LabelSelector selector = compile("{\"matchLabels\": {\"app\": \"\"}}");
+        Assertions.assertTrue(selector.matches(labels("app", "")));
+        // Missing labels are not the same as empty ones for equality
+        Assertions.assertFalse(selector.matches(labels()));
+    }
+
+    @Test
+    public void in() {
+        LabelSelector selector = compile("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"In\", \"values\": [\"prod\", \"staging\"]}]}");
+        Assertions.assertTrue(selector.matches(labels("env", "prod")));
+        Assertions.assertTrue(selector.matches(labels("env", "staging")));
+        Assertions.assertFalse(selector.matches(labels("env", "dev")));
+        Assertions.assertFalse(selector.matches(labels("other", "prod")));
+        Assertions.assertFalse(selector.matches(null));
+    }
+
+    @Test
+    public void notIn() {
+        LabelSelector selector = compile("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"NotIn\", \"values\": [\"dev\"]}]}");
+        Assertions.assertTrue(selector.matches(labels("env", "prod")));
+        Assertions.assertFalse(selector.matches(labels("env", "dev")));
+        // Kubernetes semantics: a missing label is not in any set
+        Assertions.assertTrue(selector.matches(labels()));
+        Assertions.assertTrue(selector.matches(null));
+    }
+
+    @Test
+    public void exists() {
+        LabelSelector selector = compile("{\"matchExpressions\": [{\"key\": \"team\", \"operator\": \"Exists\"}]}");
+        Assertions.assertTrue(selector.matches(labels("team", "a")));
+        Assertions.assertTrue(selector.matches(labels("team", "")));
+        Assertions.assertFalse(selector.matches(labels("other", "a")));
+        Assertions.assertFalse(selector.matches(null));
+    }
+
+    @Test
+    public void doesNotExist() {
+        LabelSelector selector = compile("{\"matchExpressions\": [{\"key\": \"skip\", \"operator\": \"DoesNotExist\", \"values\": []}]}");
+        Assertions.assertTrue(selector.matches(labels("team", "a")));
+        Assertions.assertFalse(selector.matches(labels("skip", "")));
+        Assertions.assertTrue(selector.matches(null));
+    }
+
+    @Test
+    public void allRequirementsMustMatch() {
+        LabelSelector selector = compile(
+                "{\"matchLabels\": {\"app\": \"web\"}, \"matchExpressions\": ["
+                        + "{\"key\": \"env\", \"operator\": \"In\", \"values\": [\"prod\"]},"
+                        + "{\"key\": \"skip\", \"operator\": \"DoesNotExist\"}]}"
+        );
+        Assertions.assertTrue(selector.matches(labels("app", "web", "env", "prod")));
+        Assertions.assertFalse(selector.matches(labels("app", "api", "env", "prod")));
+        Assertions.assertFalse(selector.matches(labels("app", "web", "env", "dev")));
+        Assertions.assertFalse(selector.matches(labels("app", "web", "env", "prod", "skip", "true")));
+    }
+
+    @Test
+    public void malformedSelectorsAreRejected() {
+        // Unknown or wrongly cased operators
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"in\", \"values\": [\"prod\"]}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"notin\", \"values\": [\"prod\"]}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"=\", \"values\": [\"prod\"]}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"!=\", \"values\": [\"prod\"]}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"\"}]}");
+        // Missing parts
+        assertInvalid("{\"matchExpressions\": [{\"operator\": \"Exists\"}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\"}]}");
+        assertInvalid("{\"matchExpressions\": [null]}");
+        assertInvalid("{\"matchExpressions\": null}");
+        assertInvalid("{\"matchLabels\": null}");
+        assertInvalid("{\"matchLabels\": {\"app\": null}}");
+        // Values that don't fit the operator
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"In\"}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"NotIn\", \"values\": []}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"Exists\", \"values\": [\"prod\"]}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"DoesNotExist\", \"values\": [\"prod\"]}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"In\", \"values\": null}]}");
+        assertInvalid("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"In\", \"values\": [null]}]}");
+    }
+
+    @Test
+    public void unknownOperatorIsNotCompiled() {
+        // Compiling an unvalidated selector must not turn a typo into DoesNotExist
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> LabelSelector.compile(config("{\"matchExpressions\": [{\"key\": \"env\", \"operator\": \"Notin\", \"values\": [\"prod\"]}]}"))
+        );
+    }
+}
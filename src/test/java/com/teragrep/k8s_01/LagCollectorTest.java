@@ -0,0 +1,81 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.MetricRegistry;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+public class LagCollectorTest {
+    @TempDir
+    Path statesStore;
+
+    private static Double sample(CollectorRegistry collectorRegistry, String name, String namespace) {
+        return collectorRegistry.getSampleValue(name, new String[]{"namespace"}, new String[]{namespace});
+    }
+
+    @Test
+    public void exportsLagPerNamespaceIntoGivenRegistry() {
+        AckCheckpointer checkpointer = new AckCheckpointer(statesStore, false, 5, new MetricRegistry());
+        try {
+            FileCheckpoint first = checkpointer.get("/var/log/containers", "a.log", "team", 0);
+            FileCheckpoint second = checkpointer.get("/var/log/containers", "b.log", "team", 0);
+            FileCheckpoint other = checkpointer.get("/var/log/containers", "c.log", "other", 0);
+            long now = System.currentTimeMillis();
+            first.track(100, "stdout", now - 60_000).acknowledge();
+            first.track(250, "stdout", now - 30_000);
+            second.track(40, "stdout", now - 10_000);
+            other.track(10, "stdout", now - 5_000).acknowledge();
+
+            CollectorRegistry collectorRegistry = new CollectorRegistry();
+            new LagCollector(checkpointer, 10).register(collectorRegistry);
+            // Largest event lag of the namespace, unacknowledged bytes summed
+            Assertions.assertEquals(60.0, sample(collectorRegistry, "k8s01_lag_event_seconds", "team"), 1.0);
+            Assertions.assertEquals(190.0, sample(collectorRegistry, "k8s01_lag_bytes", "team"), 0);
+            Assertions.assertEquals(5.0, sample(collectorRegistry, "k8s01_lag_event_seconds", "other"), 1.0);
+            Assertions.assertEquals(0.0, sample(collectorRegistry, "k8s01_lag_bytes", "other"), 0);
+            Assertions.assertNull(sample(CollectorRegistry.defaultRegistry, "k8s01_lag_bytes", "team"));
+        }
+        finally {
+            checkpointer.close();
+        }
+    }
+
+    @Test
+    public void namespacesOverLimitAreReportedAsOther() {
+        AckCheckpointer checkpointer = new AckCheckpointer(statesStore, false, 5, new MetricRegistry());
+        try {
+            checkpointer.get("/var/log/containers", "a.log", "first", 0).track(10, "stdout", 0);
+            checkpointer.get("/var/log/containers", "b.log", "second", 0).track(20, "stdout", 0);
+            CollectorRegistry collectorRegistry = new CollectorRegistry();
+            new LagCollector(checkpointer, 1).register(collectorRegistry);
+            // Either namespace may be the one that got labeled first
+            Double first = sample(collectorRegistry, "k8s01_lag_bytes", "first");
+            Double second = sample(collectorRegistry, "k8s01_lag_bytes", "second");
+            Assertions.assertTrue((first == null) != (second == null));
+            Assertions.assertEquals(first == null ? 10.0 : 20.0, sample(collectorRegistry, "k8s01_lag_bytes", "other"), 0);
+        }
+        finally {
+            checkpointer.close();
+        }
+    }
+}
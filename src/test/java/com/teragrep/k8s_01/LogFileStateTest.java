@@ -0,0 +1,105 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class LogFileStateTest {
+    private static final String FILENAME = "app-7d4b9_team_app-0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef.log";
+    private static final int MAX_BYTES = 1024 * 1024;
+    private final LogFileState state = new LogFileState(new LogFileDescriptor(FILENAME), LogFileState.Format.CRI, null);
+
+    private LogFileState.PartialLine append(String stream, String timestamp, String fragment, boolean partial, int maxBytes) {
+        byte[] bytes = fragment.getBytes(StandardCharsets.UTF_8);
+        return state.append(stream, timestamp, bytes, 0, bytes.length, partial, maxBytes);
+    }
+
+    private static String text(LogFileState.PartialLine line) {
+        return new String(line.getBytes(), 0, line.getLength(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void detectsFormat() {
+        Assertions.assertEquals(LogFileState.Format.DOCKER, LogFileState.detect("{\"log\":\"x\"}".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(LogFileState.Format.CRI, LogFileState.detect("2023-04-05T06:07:08Z stdout F x".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(LogFileState.Format.CRI, LogFileState.detect(new byte[0]));
+    }
+
+    @Test
+    public void parsesFilenameOnce() {
+        Assertions.assertEquals("team", state.getDescriptor().getNamespace());
+        Assertions.assertEquals("app-7d4b9", state.getDescriptor().getPodname());
+        Assertions.assertEquals("app", state.getDescriptor().getContainerName());
+        Assertions.assertEquals(new PodKey("team", "app-7d4b9"), state.getDescriptor().getPodKey());
+    }
+
+    @Test
+    public void reassemblesFragments() {
+        Assertions.assertNull(append("stdout", "t1", "first ", true, MAX_BYTES));
+        Assertions.assertTrue(state.hasPartialLine("stdout"));
+        Assertions.assertNull(append("stdout", "t2", "second ", true, MAX_BYTES));
+        LogFileState.PartialLine line = append("stdout", "t3", "last", false, MAX_BYTES);
+        Assertions.assertNotNull(line);
+        Assertions.assertEquals("first second last", text(line));
+        // The assembled line keeps the timestamp of the first fragment
+        Assertions.assertEquals("t1", line.getTimestamp());
+        Assertions.assertFalse(state.hasPartialLine("stdout"));
+    }
+
+    @Test
+    public void keepsStreamsApart() {
+        Assertions.assertNull(append("stdout", "o1", "out-a ", true, MAX_BYTES));
+        Assertions.assertNull(append("stderr", "e1", "err-a ", true, MAX_BYTES));
+        Assertions.assertFalse(state.hasPartialLine("other"));
+        LogFileState.PartialLine out = append("stdout", "o2", "out-b", false, MAX_BYTES);
+        Assertions.assertEquals("out-a out-b", text(out));
+        Assertions.assertEquals("o1", out.getTimestamp());
+        Assertions.assertTrue(state.hasPartialLine("stderr"));
+        LogFileState.PartialLine err = append("stderr", "e2", "err-b", false, MAX_BYTES);
+        Assertions.assertEquals("err-a err-b", text(err));
+        Assertions.assertEquals("e1", err.getTimestamp());
+    }
+
+    @Test
+    public void flushesAtMaxBytes() {
+        Assertions.assertNull(append("stdout", "t1", "123456", true, 10));
+        LogFileState.PartialLine line = append("stdout", "t2", "789012", true, 10);
+        Assertions.assertNotNull(line);
+        Assertions.assertEquals("123456789012", text(line));
+        Assertions.assertFalse(state.hasPartialLine("stdout"));
+        // The rest of the oversized line starts a new one
+        Assertions.assertNull(append("stdout", "t3", "rest", true, 10));
+        Assertions.assertEquals("rest!", text(append("stdout", "t4", "!", false, 10)));
+    }
+
+    @Test
+    public void growsPastInitialBuffer() {
+        char[] fragment = new char[10000];
+        Arrays.fill(fragment, 'x');
+        String value = new String(fragment);
+        Assertions.assertNull(append("stdout", "t1", value, true, MAX_BYTES));
+        Assertions.assertNull(append("stdout", "t2", value, true, MAX_BYTES));
+        LogFileState.PartialLine line = append("stdout", "t3", value, false, MAX_BYTES);
+        Assertions.assertEquals(30000, line.getLength());
+        Assertions.assertEquals(value + value + value, text(line));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LogFileStatesTest {
+    private static final String FILENAME = "app-7d4b9_team_app-0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef.log";
+
+    @TempDir
+    Path statesStore;
+
+    @TempDir
+    Path logs;
+
+    @Test
+    public void sharesStatePerFile() {
+        LogFileStates states = new LogFileStates(null);
+        byte[] docker = "{\"log\":\"x\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] cri = "2023-04-05T06:07:08Z stdout F x".getBytes(StandardCharsets.UTF_8);
+        LogFileState first = states.get("/var/log/containers", FILENAME, docker, 0);
+        // Format comes from the first record, later records of the file get the same state
+        Assertions.assertSame(first, states.get("/var/log/containers", FILENAME, cri, 100));
+        Assertions.assertEquals(LogFileState.Format.DOCKER, first.getFormat());
+        Assertions.assertNull(first.getCheckpoint());
+        LogFileState other = states.get("/var/log/other", FILENAME, cri, 0);
+        Assertions.assertNotSame(first, other);
+        Assertions.assertEquals(LogFileState.Format.CRI, other.getFormat());
+    }
+
+    @Test
+    public void partialLinesSurviveAcrossConsumers() {
+        LogFileStates states = new LogFileStates(null);
+        byte[] fragment = "2023-04-05T06:07:08Z stdout P a".getBytes(StandardCharsets.UTF_8);
+        // Two consumers handling records of the same file see the same partial line
+        states.get("/var/log/containers", FILENAME, fragment, 0).append("stdout", "t1", fragment, 30, 1, true, 1024);
+        Assertions.assertTrue(states.get("/var/log/containers", FILENAME, fragment, 32).hasPartialLine("stdout"));
+    }
+
+    @Test
+    public void rotatedFileStartsOver() throws IOException {
+        Path file = Files.write(logs.resolve(FILENAME), new byte[0]);
+        AckCheckpointer checkpointer = new AckCheckpointer(statesStore, false, 0, new MetricRegistry());
+        LogFileStates states = new LogFileStates(checkpointer);
+        byte[] fragment = "2023-04-05T06:07:08Z stdout P a".getBytes(StandardCharsets.UTF_8);
+        LogFileState first = states.get(logs.toString(), FILENAME, fragment, 0);
+        first.getCheckpoint().track(40, "stdout", 0);
+        first.append("stdout", "t1", fragment, 30, 1, true, 1024);
+        first.getCheckpoint().hold(72, "stdout");
+        Assertions.assertSame(first, states.get(logs.toString(), FILENAME, fragment, 72));
+
+        // Same name, different file read from the beginning
+        Path replacement = Files.write(logs.resolve("replacement"), new byte[0]);
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+        byte[] docker = "{\"log\":\"x\"}".getBytes(StandardCharsets.UTF_8);
+        LogFileState second = states.get(logs.toString(), FILENAME, docker, 0);
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals(LogFileState.Format.DOCKER, second.getFormat());
+        Assertions.assertFalse(second.hasPartialLine("stdout"));
+        Assertions.assertNotSame(first.getCheckpoint(), second.getCheckpoint());
+        Assertions.assertNotEquals(first.getCheckpoint().getFileKey(), second.getCheckpoint().getFileKey());
+        Assertions.assertEquals(0, second.getCheckpoint().getReadOffset());
+        Assertions.assertSame(second, states.get(logs.toString(), FILENAME, docker, 20));
+        checkpointer.close();
+    }
+
+    @Test
+    public void expiredStateReleasesHeldFragments() throws IOException {
+        Files.write(logs.resolve(FILENAME), new byte[0]);
+        AckCheckpointer checkpointer = new AckCheckpointer(statesStore, false, 0, new MetricRegistry());
+        AtomicLong nanos = new AtomicLong();
+        LogFileStates states = new LogFileStates(checkpointer, new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+        byte[] fragment = "2023-04-05T06:07:08Z stdout P a".getBytes(StandardCharsets.UTF_8);
+        LogFileState state = states.get(logs.toString(), FILENAME, fragment, 0);
+        FileCheckpoint checkpoint = state.getCheckpoint();
+        state.append("stdout", "t1", fragment, 30, 1, true, 1024);
+        checkpoint.hold(32, "stdout");
+        checkpoint.track(64, "stderr", 0).acknowledge();
+        Assertions.assertEquals(0, checkpoint.getAcknowledgedOffset());
+
+        // The rest of the line never arrives and the file goes quiet
+        nanos.addAndGet(TimeUnit.HOURS.toNanos(2));
+        LogFileState resumed = states.get(logs.toString(), FILENAME, fragment, 64);
+        Assertions.assertNotSame(state, resumed);
+        Assertions.assertFalse(state.hasPartialLine("stdout"));
+        Assertions.assertSame(checkpoint, resumed.getCheckpoint());
+        Assertions.assertEquals(64, checkpoint.getAcknowledgedOffset());
+        checkpointer.close();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+public class MemoryBudgetTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private int used() {
+        return (Integer) metricRegistry.getGauges().get(name("k8s01", "memory", "budget", "used")).getValue();
+    }
+
+    private long waits() {
+        return metricRegistry.meter(name("k8s01", "memory", "budget", "waits")).getCount();
+    }
+
+    // Acquires on another thread, the returned thread is still alive while it waits for the budget
+    private static Thread acquireAsync(MemoryBudget budget, int bytes, AtomicInteger reserved) {
+        Thread thread = new Thread(() -> {
+            try {
+                reserved.set(budget.acquire(bytes));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void acquireAndRelease() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(100, metricRegistry);
+        Assertions.assertEquals(100, budget.getCapacity());
+        int first = budget.acquire(60);
+        int second = budget.acquire(40);
+        Assertions.assertEquals(60, first);
+        Assertions.assertEquals(40, second);
+        Assertions.assertEquals(100, used());
+        budget.release(first);
+        Assertions.assertEquals(40, used());
+        budget.release(second);
+        Assertions.assertEquals(0, used());
+        Assertions.assertEquals(0, waits());
+    }
+
+    @Test
+    public void blocksUntilReleased() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(100, metricRegistry);
+        int held = budget.acquire(80);
+        AtomicInteger reserved = new AtomicInteger();
+        Thread waiting = acquireAsync(budget, 30, reserved);
+        waiting.join(TimeUnit.MILLISECONDS.toMillis(200));
+        Assertions.assertTrue(waiting.isAlive(), "Acquire did not wait for the budget");
+        Assertions.assertEquals(1, waits());
+        budget.release(held);
+        waiting.join(TimeUnit.SECONDS.toMillis(10));
+        Assertions.assertFalse(waiting.isAlive());
+        Assertions.assertEquals(30, reserved.get());
+        Assertions.assertEquals(30, used());
+    }
+
+    @Test
+    public void oversizedRecordIsCappedToBudget() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(100, metricRegistry);
+        int held = budget.acquire(10);
+        AtomicInteger reserved = new AtomicInteger();
+        // Larger than the whole budget, proceeds once everything else is released instead of waiting forever
+        Thread waiting = acquireAsync(budget, 1000, reserved);
+        waiting.join(TimeUnit.MILLISECONDS.toMillis(200));
+        Assertions.assertTrue(waiting.isAlive());
+        budget.release(held);
+        waiting.join(TimeUnit.SECONDS.toMillis(10));
+        Assertions.assertFalse(waiting.isAlive());
+        Assertions.assertEquals(100, reserved.get());
+        budget.release(reserved.get());
+        Assertions.assertEquals(0, used());
+    }
+
+    @Test
+    public void emptyRecordsReserveOneByte() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(100, metricRegistry);
+        Assertions.assertEquals(1, budget.acquire(0));
+        Assertions.assertEquals(1, used());
+        // Nothing reserved, nothing released
+        budget.release(0);
+        Assertions.assertEquals(1, used());
+    }
+
+    @Test
+    public void capacityIsClamped() {
+        Assertions.assertEquals(Integer.MAX_VALUE, new MemoryBudget(Long.MAX_VALUE, new MetricRegistry()).getCapacity());
+        Assertions.assertEquals(1, new MemoryBudget(0, new MetricRegistry()).getCapacity());
+    }
+
+    @Test
+    public void interruptedWaitReservesNothing() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(100, metricRegistry);
+        int held = budget.acquire(100);
+        AtomicInteger reserved = new AtomicInteger(-1);
+        Thread waiting = acquireAsync(budget, 50, reserved);
+        waiting.join(TimeUnit.MILLISECONDS.toMillis(200));
+        waiting.interrupt();
+        waiting.join(TimeUnit.SECONDS.toMillis(10));
+        Assertions.assertFalse(waiting.isAlive());
+        Assertions.assertEquals(-1, reserved.get());
+        budget.release(held);
+        Assertions.assertEquals(0, used());
+    }
+}
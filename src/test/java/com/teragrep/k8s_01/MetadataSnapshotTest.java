@@ -0,0 +1,155 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.teragrep.k8s_01.metadata.ContainerStructuredData;
+import com.teragrep.k8s_01.metadata.NamespaceMetadataContainer;
+import com.teragrep.k8s_01.metadata.PodMetadataContainer;
+import io.kubernetes.client.openapi.models.V1Namespace;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodSpec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MetadataSnapshotTest {
+    @TempDir
+    Path directory;
+
+    private static PodMetadataContainer pod(String name, String uid) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put("app", name);
+        labels.put("tier", "back\"end");
+        V1Pod pod = new V1Pod()
+                .metadata(
+                        new V1ObjectMeta()
+                                .name(name)
+                                .namespace("team")
+                                .uid(uid)
+                                .creationTimestamp(OffsetDateTime.parse("2023-01-02T03:04:05Z"))
+                                .labels(labels)
+                )
+                .spec(new V1PodSpec().nodeName("node-1"));
+        return new PodMetadataContainer(pod);
+    }
+
+    private static NamespaceMetadataContainer namespace(String name, String uid) {
+        V1Namespace namespace = new V1Namespace()
+                .metadata(new V1ObjectMeta().name(name).uid(uid).labels(Collections.singletonMap("team", "a\u00e4")));
+        return new NamespaceMetadataContainer(namespace);
+    }
+
+    private static ContainerStructuredData structuredData(NamespaceMetadataContainer namespace, PodMetadataContainer pod) {
+        return new ContainerStructuredData(namespace, pod, "app", "0123456789ab", "/var/log/containers", new Rfc5424Encoder());
+    }
+
+    private static void assertSamePod(PodMetadataContainer expected, PodMetadataContainer actual) {
+        Assertions.assertEquals(expected.getPodId(), actual.getPodId());
+        Assertions.assertEquals(expected.getPodname(), actual.getPodname());
+        Assertions.assertEquals(expected.getNamespaceName(), actual.getNamespaceName());
+        Assertions.assertEquals(expected.getHost(), actual.getHost());
+        Assertions.assertEquals(expected.getCreationTimestamp(), actual.getCreationTimestamp());
+        Assertions.assertEquals(expected.getLabels(), actual.getLabels());
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Path path = directory.resolve("metadata-snapshot.json");
+        List<PodMetadataContainer> pods = Arrays.asList(pod("app-0", "uid-0"), pod("app-1", "uid-1"));
+        List<NamespaceMetadataContainer> namespaces = Collections.singletonList(namespace("team", "uid-team"));
+        MetadataSnapshot written = new MetadataSnapshot(pods, namespaces);
+        written.write(path);
+
+        MetadataSnapshot read = MetadataSnapshot.read(path);
+        Assertions.assertNotNull(read);
+        Assertions.assertEquals(written.getCreated(), read.getCreated());
+        Assertions.assertEquals(2, read.getPods().size());
+        assertSamePod(pods.get(0), read.getPods().get(0));
+        assertSamePod(pods.get(1), read.getPods().get(1));
+        Assertions.assertEquals(1, read.getNamespaces().size());
+        Assertions.assertEquals("uid-team", read.getNamespaces().get(0).getUid());
+        Assertions.assertEquals("team", read.getNamespaces().get(0).getName());
+        Assertions.assertEquals(namespaces.get(0).getLabels(), read.getNamespaces().get(0).getLabels());
+        Assertions.assertFalse(Files.exists(directory.resolve("metadata-snapshot.json.tmp")));
+    }
+
+    @Test
+    public void placeholdersRoundTrip() throws IOException {
+        Path path = directory.resolve("metadata-snapshot.json");
+        new MetadataSnapshot(
+                Collections.singletonList(new PodMetadataContainer("team", "missing")),
+                Collections.singletonList(new NamespaceMetadataContainer("gone"))
+        ).write(path);
+        MetadataSnapshot read = MetadataSnapshot.read(path);
+        PodMetadataContainer pod = read.getPods().get(0);
+        Assertions.assertEquals("missing", pod.getPodname());
+        Assertions.assertNull(pod.getPodId());
+        Assertions.assertNull(pod.getLabels());
+        Assertions.assertNull(read.getNamespaces().get(0).getUid());
+    }
+
+    @Test
+    public void restoredPodsCanHoldStructuredData() throws IOException {
+        // Transient fields are not initialized by Gson, read pods must be usable like fetched ones
+        Path path = directory.resolve("metadata-snapshot.json");
+        PodMetadataContainer pod = pod("app-0", "uid-0");
+        NamespaceMetadataContainer namespace = namespace("team", "uid-team");
+        pod.putStructuredData("container", structuredData(namespace, pod));
+        new MetadataSnapshot(Collections.singletonList(pod), Collections.emptyList()).write(path);
+        String json = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        Assertions.assertFalse(json.contains("structuredData"));
+        PodMetadataContainer restored = MetadataSnapshot.read(path).getPods().get(0);
+        Assertions.assertNull(restored.getStructuredData("container"));
+        restored.putStructuredData("container", structuredData(namespace, restored));
+        Assertions.assertNotNull(restored.getStructuredData("container"));
+    }
+
+    @Test
+    public void missingSnapshotIsIgnored() {
+        Assertions.assertNull(MetadataSnapshot.read(directory.resolve("metadata-snapshot.json")));
+    }
+
+    @Test
+    public void unusableSnapshotsAreIgnored() throws IOException {
+        Path path = directory.resolve("metadata-snapshot.json");
+        String[] contents = {
+                "",
+                "not json",
+                "{\"version\": 1, \"created\": 0, \"pods\": [",
+                "{\"version\": 2, \"created\": 0, \"pods\": [], \"namespaces\": []}",
+                "{\"version\": 1, \"created\": 0, \"namespaces\": []}",
+                "{\"version\": 1, \"created\": 0, \"pods\": []}"
+        };
+        for(String content : contents) {
+            Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+            Assertions.assertNull(MetadataSnapshot.read(path), "Snapshot was not ignored: " + content);
+        }
+    }
+}
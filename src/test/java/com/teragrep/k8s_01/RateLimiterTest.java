@@ -0,0 +1,122 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.config.AppConfigRateLimit;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RateLimiterTest {
+    private static final PodKey POD = new PodKey("team", "app");
+
+    private final CollectorRegistry collectorRegistry = new CollectorRegistry();
+
+    private RateLimiter dropping() {
+        AppConfigRateLimit config = new Gson().fromJson(
+                "{\"enabled\": true, \"action\": \"drop\", \"pod\": {\"eventsPerSecond\": 1, \"burstSeconds\": 1}}",
+                AppConfigRateLimit.class
+        );
+        return new RateLimiter(config, collectorRegistry);
+    }
+
+    @Test
+    public void countsDropsUntilTaken() throws InterruptedException {
+        RateLimiter rateLimiter = dropping();
+        Assertions.assertNull(rateLimiter.takeDropped(POD));
+        Assertions.assertTrue(rateLimiter.acquire(POD, 10));
+        Assertions.assertFalse(rateLimiter.acquire(POD, 10));
+        Assertions.assertFalse(rateLimiter.acquire(POD, 20));
+        long[] dropped = rateLimiter.takeDropped(POD);
+        Assertions.assertEquals(2, dropped[0]);
+        Assertions.assertEquals(30, dropped[1]);
+        Assertions.assertNull(rateLimiter.takeDropped(POD));
+        Assertions.assertNull(rateLimiter.takeDropped(new PodKey("team", "other")));
+    }
+
+    @Test
+    public void countsDropsInGivenRegistry() throws InterruptedException {
+        RateLimiter rateLimiter = dropping();
+        rateLimiter.acquire(POD, 10);
+        rateLimiter.acquire(POD, 10);
+        rateLimiter.acquire(POD, 20);
+        String[] labelNames = {"namespace", "limit", "action"};
+        String[] labelValues = {"team", "pod", "drop"};
+        Assertions.assertEquals(2.0, collectorRegistry.getSampleValue("k8s01_ratelimit_events_total", labelNames, labelValues), 0);
+        Assertions.assertEquals(30.0, collectorRegistry.getSampleValue("k8s01_ratelimit_bytes_total", labelNames, labelValues), 0);
+        Assertions.assertNull(CollectorRegistry.defaultRegistry.getSampleValue("k8s01_ratelimit_events_total", labelNames, labelValues));
+    }
+
+    @Test
+    public void takesConsistentSnapshots() throws InterruptedException {
+        RateLimiter rateLimiter = dropping();
+        int size = 100;
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong drops = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for(int j = 0; j < 50000; j++) {
+                        if(!rateLimiter.acquire(POD, size)) {
+                            drops.incrementAndGet();
+                        }
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicLong taken = new AtomicLong();
+        Thread taker = new Thread(() -> {
+            while(running.get()) {
+                long[] dropped = rateLimiter.takeDropped(POD);
+                if(dropped != null) {
+                    // Every dropped record has the same size, a torn snapshot would not add up
+                    if(dropped[1] != dropped[0] * size) {
+                        failure.compareAndSet(null, dropped[0] + " events with " + dropped[1] + " bytes");
+                    }
+                    taken.addAndGet(dropped[0]);
+                }
+            }
+        });
+        taker.start();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        running.set(false);
+        taker.join();
+        long[] rest = rateLimiter.takeDropped(POD);
+        if(rest != null) {
+            taken.addAndGet(rest[0]);
+        }
+        Assertions.assertNull(failure.get());
+        Assertions.assertEquals(drops.get(), taken.get());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.gson.Gson;
+import com.teragrep.k8s_01.config.AppConfigRelp;
+import com.teragrep.k8s_01.config.AppConfigRelpSpool;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+public class RelpOutputStageTest {
+    private static final AppConfigRelp RELP = new Gson().fromJson(
+            "{\"target\": \"127.0.0.1\", \"port\": 601, \"connectionTimeout\": 1000, \"readTimeout\": 1000, \"writeTimeout\": 1000, \"reconnectInterval\": 600000, \"tls\": {\"enabled\": false}}",
+            AppConfigRelp.class
+    );
+
+    private final StageLatency stageLatency = new StageLatency(new CollectorRegistry());
+
+    @TempDir
+    Path directory;
+
+    /* Output whose target never answers, connect() waits until the output is stopped */
+    private static final class UnreachableOutput extends RelpOutput {
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        private UnreachableOutput(int id, MetricRegistry metricRegistry, StageLatency stageLatency) {
+            super(RELP, id, metricRegistry, stageLatency);
+        }
+
+        @Override
+        boolean connect() {
+            try {
+                stopped.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        @Override
+        void stop() {
+            super.stop();
+            stopped.countDown();
+        }
+    }
+
+    private DiskSpool spool(MetricRegistry metricRegistry) throws IOException {
+        AppConfigRelpSpool config = new Gson().fromJson("{\"enabled\": true, \"maxBytes\": 1048576, \"segmentSize\": 65536}", AppConfigRelpSpool.class);
+        return new DiskSpool(directory, config, metricRegistry);
+    }
+
+    private RelpOutputStage stage(DiskSpool spool, MetricRegistry metricRegistry) {
+        return new RelpOutputStage(id -> new UnreachableOutput(id, metricRegistry, stageLatency), 2, 2, 1000, 16, 10, spool, metricRegistry, stageLatency);
+    }
+
+    private static OutputEvent event(String id) {
+        return new OutputEvent(id, id.getBytes(StandardCharsets.UTF_8), null, null, 0);
+    }
+
+    private static void closeWithin(RelpOutputStage stage) throws InterruptedException {
+        Thread closer = new Thread(stage::close);
+        closer.start();
+        closer.join(TimeUnit.SECONDS.toMillis(10));
+        Assertions.assertFalse(closer.isAlive(), "close() did not return while the target was unreachable");
+    }
+
+    @Test
+    public void closeDoesNotWaitForUnreachableTarget() throws InterruptedException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RelpOutputStage stage = stage(null, metricRegistry);
+        stage.start();
+        stage.publish(event("event-1"));
+        closeWithin(stage);
+    }
+
+    @Test
+    public void spoolsQueuedEventsOnShutdown() throws IOException, InterruptedException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RelpOutputStage stage = stage(spool(metricRegistry), metricRegistry);
+        stage.start();
+        stage.publish(event("event-1"));
+        stage.publish(event("event-2"));
+        closeWithin(stage);
+
+        DiskSpool recovered = spool(new MetricRegistry());
+        Assertions.assertEquals("event-1", recovered.next().getId());
+        Assertions.assertEquals("event-2", recovered.next().getId());
+        Assertions.assertNull(recovered.next());
+    }
+
+    @Test
+    public void replayedEventsAreNotSpooledTwice() throws IOException, InterruptedException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        DiskSpool spool = spool(metricRegistry);
+        spool.append("spooled-1", new byte[10]);
+        RelpOutputStage stage = stage(spool, metricRegistry);
+        stage.start();
+        // Wait until the replayer has moved the spooled event to the queue
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while((Integer) metricRegistry.getGauges().get(name("k8s01", "output", "queue", "depth")).getValue() == 0) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "Spooled event was not replayed");
+            Thread.sleep(10);
+        }
+        closeWithin(stage);
+
+        DiskSpool recovered = spool(new MetricRegistry());
+        Assertions.assertEquals("spooled-1", recovered.next().getId());
+        Assertions.assertNull(recovered.next());
+    }
+
+    @Test
+    public void fullSpoolHoldsBackPublisher() throws IOException, InterruptedException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        AppConfigRelpSpool config = new Gson().fromJson("{\"enabled\": true, \"maxBytes\": 128, \"segmentSize\": 64, \"dropPolicy\": \"block\"}", AppConfigRelpSpool.class);
+        DiskSpool spool = new DiskSpool(directory, config, metricRegistry);
+        spool.append("spooled-1", new byte[40]);
+        spool.append("spooled-2", new byte[40]);
+        RelpOutputStage stage = new RelpOutputStage(id -> new UnreachableOutput(id, metricRegistry, stageLatency), 1, 1, 1000, 1, 10, spool, metricRegistry, stageLatency);
+        // Replayer is not started, the spool stays full and the queue takes a single event
+        FileCheckpoint checkpoint = new FileCheckpoint("/var/log/containers", "app.log", "1:2", "team", 0);
+        FileCheckpoint.Pending first = checkpoint.track(10, "stdout", 0);
+        FileCheckpoint.Pending second = checkpoint.track(20, "stdout", 0);
+        Thread publisher = new Thread(() -> {
+            try {
+                stage.publish(new OutputEvent("event-1", new byte[40], first, null, 0));
+                stage.publish(new OutputEvent("event-2", new byte[40], second, null, 0));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        publisher.start();
+        publisher.join(TimeUnit.SECONDS.toMillis(1));
+        Assertions.assertTrue(publisher.isAlive(), "Publisher was not held back by the full spool");
+        // Events that did not fit into the spool are not acknowledged
+        Assertions.assertEquals(0, checkpoint.getAcknowledgedOffset());
+        Assertions.assertEquals(1L, metricRegistry.meter(name("k8s01", "output", "backpressure")).getCount());
+        publisher.interrupt();
+        publisher.join();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import com.teragrep.rlo_14.Facility;
+import com.teragrep.rlo_14.SDElement;
+import com.teragrep.rlo_14.SDParam;
+import com.teragrep.rlo_14.Severity;
+import com.teragrep.rlo_14.SyslogMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/* Encoder output compared byte for byte against SyslogMessage.toRfc5424SyslogMessage() of rlo_14 */
+public class Rfc5424EncoderTest {
+    private static final String TIMESTAMP = "2023-01-02T03:04:05.123456789Z";
+
+    private static void assertSameBytes(SyslogMessage expected, Rfc5424Encoder actual) {
+        byte[] reference = expected.toRfc5424SyslogMessage().getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = actual.toByteArray();
+        // Strings first for a readable failure, unpaired surrogates are compared as the '?' they are sent as
+        Assertions.assertEquals(new String(reference, StandardCharsets.UTF_8), new String(encoded, StandardCharsets.UTF_8));
+        Assertions.assertArrayEquals(reference, encoded);
+    }
+
+    private static SyslogMessage syslog(String timestamp, String hostname, String appName) {
+        return new SyslogMessage()
+                .withTimestamp(timestamp, true)
+                .withSeverity(Severity.WARNING)
+                .withHostname(hostname)
+                .withAppName(appName)
+                .withFacility(Facility.USER);
+    }
+
+    private static Rfc5424Encoder encoder(String timestamp, String hostname, String appName) {
+        return new Rfc5424Encoder().header(Facility.USER, Severity.WARNING, timestamp, hostname, appName);
+    }
+
+    private static void assertParamValue(String value) {
+        SDElement element = new SDElement("kubernetesmeta@48577");
+        element.addSDParam("stream", value);
+        assertSameBytes(
+                syslog(TIMESTAMP, "host", "app").withSDElement(element).withMsg("message"),
+                encoder(TIMESTAMP, "host", "app").startElement("kubernetesmeta@48577").param("stream", value).endElement().message("message")
+        );
+    }
+
+    @Test
+    public void escapesParamValues() {
+        assertParamValue("quote \" in value");
+        assertParamValue("backslash \\ in value");
+        assertParamValue("bracket ] in value");
+        assertParamValue("\"\\]\\\"]");
+        assertParamValue("");
+        // Opening bracket and equals sign are not escaped
+        assertParamValue("[key=value]");
+    }
+
+    @Test
+    public void escapesNonAsciiParamValues() {
+        assertParamValue("p\u00e4\u00e4 \u00e9 \u4e2d\u6587 \ud83d\ude00 \"]");
+    }
+
+    @Test
+    public void nonAsciiMessages() {
+        String[] messages = {
+                "p\u00e4\u00e4llikk\u00f6",
+                "\u4e2d\u6587\u65e5\u672c\u8a9e",
+                "emoji \ud83d\ude00 \ud83d\udc4d",
+                "unpaired \ud83d surrogate \ude00",
+                "control \u0000 \t \n characters",
+                ""
+        };
+        for(String message : messages) {
+            assertSameBytes(
+                    syslog(TIMESTAMP, "host", "app").withSDElement(new SDElement("event_id@48577")).withMsg(message),
+                    encoder(TIMESTAMP, "host", "app").startElement("event_id@48577").endElement().message(message)
+            );
+            byte[] utf8 = message.getBytes(StandardCharsets.UTF_8);
+            assertSameBytes(
+                    syslog(TIMESTAMP, "host", "app").withSDElement(new SDElement("event_id@48577")).withMsg(message),
+                    encoder(TIMESTAMP, "host", "app").startElement("event_id@48577").endElement().message(utf8, 0, utf8.length)
+            );
+        }
+    }
+
+    @Test
+    public void missingMessage() {
+        assertSameBytes(
+                syslog(TIMESTAMP, "host", "app").withSDElement(new SDElement("event_id@48577")),
+                encoder(TIMESTAMP, "host", "app").startElement("event_id@48577").endElement().message(null)
+        );
+    }
+
+    @Test
+    public void emptyAndNilHostnameAndAppName() {
+        String[][] headers = {
+                {"", ""},
+                {"-", "-"},
+                {"", "app"},
+                {"host", "-"},
+                {null, null}
+        };
+        for(String[] header : headers) {
+            assertSameBytes(
+                    syslog(TIMESTAMP, header[0], header[1]).withSDElement(new SDElement("event_id@48577")).withMsg("message"),
+                    encoder(TIMESTAMP, header[0], header[1]).startElement("event_id@48577").endElement().message("message")
+            );
+        }
+    }
+
+    @Test
+    public void timestampsArePassedThrough() {
+        String[] timestamps = {
+                "2023-01-02T03:04:05Z",
+                "2023-01-02T03:04:05.1Z",
+                "2023-01-02T03:04:05.123456Z",
+                "2023-01-02T03:04:05.123456789Z",
+                "2023-01-02T03:04:05.123+02:00",
+                "2023-01-02T03:04:05.123456789-07:30"
+        };
+        for(String timestamp : timestamps) {
+            assertSameBytes(
+                    syslog(timestamp, "host", "app").withSDElement(new SDElement("event_id@48577")).withMsg("message"),
+                    encoder(timestamp, "host", "app").startElement("event_id@48577").endElement().message("message")
+            );
+        }
+    }
+
+    // Same structure as K8SConsumer, with pre-encoded params and elements passed in raw
+    @Test
+    public void consumerMessage() {
+        SDParam realHostname = new SDParam("hostname", "node-1");
+        SDElement additionalMetadata = new SDElement("additional_metadata@48577");
+        additionalMetadata.addSDParam("cluster", "test \"cluster\"");
+        SDElement origin = new SDElement("origin@48577");
+        origin.addSDParam("hostname", "worker-1/0123456789ab");
+        SDElement eventNodeSource = new SDElement("event_node_source@48577");
+        eventNodeSource.addSDParam(realHostname);
+        eventNodeSource.addSDParam("source", "/var/log/containers/app-7d4b9_team_app-0123.log");
+        eventNodeSource.addSDParam("source_module", "k8s_01");
+        SDElement eventId = new SDElement("event_id@48577");
+        eventId.addSDParam(realHostname);
+        eventId.addSDParam("uuid", "0188c1a2-3b4c-7d5e-8f90-123456789abc");
+        eventId.addSDParam("unixtime", "1672628645");
+        eventId.addSDParam("id_source", "source");
+        SDElement kubernetesMeta = new SDElement("kubernetesmeta@48577");
+        kubernetesMeta.addSDParam("kubernetes", "{\"labels\":{\"app\":\"a]b\"},\"path\":\"C:\\\\logs\"}");
+        kubernetesMeta.addSDParam("docker", "{\"container_id\":\"0123456789ab\"}");
+        kubernetesMeta.addSDParam("stream", "stdout");
+        SyslogMessage expected = syslog(TIMESTAMP, "app-7d4b9", "team/app")
+                .withSDElement(additionalMetadata)
+                .withSDElement(origin)
+                .withSDElement(eventNodeSource)
+                .withSDElement(eventId)
+                .withSDElement(kubernetesMeta)
+                .withMsg("log line with \u00e4 and \ud83d\ude00");
+
+        Rfc5424Encoder encoder = new Rfc5424Encoder();
+        byte[] sdAdditionalMetadata = encoder.startElement("additional_metadata@48577").param("cluster", "test \"cluster\"").endElement().toByteArray();
+        byte[] sdOrigin = encoder.reset().startElement("origin@48577").param("hostname", "worker-1/0123456789ab").endElement().toByteArray();
+        byte[] sdRealHostname = encoder.reset().param("hostname", "node-1").toByteArray();
+        encoder.reset()
+                .header(Facility.USER, Severity.WARNING, TIMESTAMP, "app-7d4b9", "team/app")
+                .raw(sdAdditionalMetadata)
+                .raw(sdOrigin)
+                .startElement("event_node_source@48577")
+                .raw(sdRealHostname)
+                .param("source", "/var/log/containers/app-7d4b9_team_app-0123.log")
+                .param("source_module", "k8s_01")
+                .endElement()
+                .startElement("event_id@48577")
+                .raw(sdRealHostname)
+                .param("uuid", "0188c1a2-3b4c-7d5e-8f90-123456789abc")
+                .param("unixtime", "1672628645")
+                .param("id_source", "source")
+                .endElement()
+                .startElement("kubernetesmeta@48577")
+                .param("kubernetes", "{\"labels\":{\"app\":\"a]b\"},\"path\":\"C:\\\\logs\"}")
+                .param("docker", "{\"container_id\":\"0123456789ab\"}")
+                .param("stream", "stdout")
+                .endElement()
+                .message("log line with \u00e4 and \ud83d\ude00");
+        assertSameBytes(expected, encoder);
+    }
+
+    @Test
+    public void bufferGrowsForLargeMessages() {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 100000; i++) {
+            builder.append("\u00e4\"]");
+        }
+        String large = builder.toString();
+        SDElement element = new SDElement("kubernetesmeta@48577");
+        element.addSDParam("stream", large);
+        assertSameBytes(
+                syslog(TIMESTAMP, "host", "app").withSDElement(element).withMsg(large),
+                encoder(TIMESTAMP, "host", "app").startElement("kubernetesmeta@48577").param("stream", large).endElement().message(large)
+        );
+    }
+}
@@ -0,0 +1,53 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class StageLatencyTest {
+    private static Double sample(CollectorRegistry collectorRegistry, String name, String stage) {
+        return collectorRegistry.getSampleValue(name, new String[]{"stage"}, new String[]{stage});
+    }
+
+    @Test
+    public void observesIntoGivenRegistry() {
+        CollectorRegistry collectorRegistry = new CollectorRegistry();
+        StageLatency stageLatency = new StageLatency(collectorRegistry);
+        stageLatency.observe(StageLatency.Stage.COMMIT, 3_000_000);
+        stageLatency.observe(StageLatency.Stage.COMMIT, 1_000_000);
+        stageLatency.observe(StageLatency.Stage.POOL_WAIT, 500);
+        Assertions.assertEquals(2.0, sample(collectorRegistry, "k8s01_stage_latency_seconds_count", "commit"), 0);
+        Assertions.assertEquals(0.004, sample(collectorRegistry, "k8s01_stage_latency_seconds_sum", "commit"), 1e-9);
+        Assertions.assertEquals(1.0, sample(collectorRegistry, "k8s01_stage_latency_seconds_count", "pool_wait"), 0);
+        // Every stage is exported from the start
+        Assertions.assertEquals(0.0, sample(collectorRegistry, "k8s01_stage_latency_seconds_count", "decode"), 0);
+        Assertions.assertNull(sample(CollectorRegistry.defaultRegistry, "k8s01_stage_latency_seconds_count", "commit"));
+    }
+
+    @Test
+    public void instancesDoNotShareObservations() {
+        CollectorRegistry first = new CollectorRegistry();
+        CollectorRegistry second = new CollectorRegistry();
+        new StageLatency(first).observe(StageLatency.Stage.ENCODE, 1000);
+        new StageLatency(second);
+        Assertions.assertEquals(1.0, sample(first, "k8s01_stage_latency_seconds_count", "encode"), 0);
+        Assertions.assertEquals(0.0, sample(second, "k8s01_stage_latency_seconds_count", "encode"), 0);
+    }
+}
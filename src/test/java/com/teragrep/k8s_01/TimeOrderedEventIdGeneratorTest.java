@@ -0,0 +1,84 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TimeOrderedEventIdGeneratorTest {
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 20000;
+
+    @Test
+    public void generatesVersion7Ids() {
+        long before = System.currentTimeMillis();
+        UUID uuid = UUID.fromString(new TimeOrderedEventIdGenerator().next());
+        Assertions.assertEquals(7, uuid.version());
+        Assertions.assertEquals(2, uuid.variant());
+        long millis = uuid.getMostSignificantBits() >>> 16;
+        Assertions.assertTrue(millis >= before && millis <= System.currentTimeMillis());
+    }
+
+    @Test
+    public void generatesUniqueIncreasingIdsAcrossThreads() throws InterruptedException {
+        TimeOrderedEventIdGenerator generator = new TimeOrderedEventIdGenerator();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                UUID previous = null;
+                for(int j = 0; j < IDS_PER_THREAD; j++) {
+                    String id = generator.next();
+                    UUID uuid = UUID.fromString(id);
+                    // Ids of a thread sort in generation order, even when the sequence overflows within a millisecond
+                    if(previous != null && Long.compareUnsigned(uuid.getMostSignificantBits(), previous.getMostSignificantBits()) <= 0) {
+                        failure.compareAndSet(null, previous + " was followed by " + id);
+                    }
+                    if(!ids.add(id)) {
+                        failure.compareAndSet(null, "Duplicate id " + id);
+                    }
+                    previous = uuid;
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertNull(failure.get());
+        Assertions.assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+   Kubernetes log forwarder k8s_01
+   Copyright (C) 2023  Suomen Kanuuna Oy
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.teragrep.k8s_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+public class TimestampCodecTest {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSxxx");
+    private static final ZoneId HELSINKI = ZoneId.of("Europe/Helsinki");
+
+    // What K8SConsumer did before the codec
+    private static String reference(String timestamp, ZoneId zoneId) {
+        return OffsetDateTime.parse(timestamp, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant().atZone(zoneId).format(FORMAT);
+    }
+
+    @Test
+    public void convertsToUtc() {
+        TimestampCodec codec = new TimestampCodec(ZoneId.of("UTC"));
+        Assertions.assertEquals("2023-04-05T06:07:08.123456+00:00", codec.convert("2023-04-05T06:07:08.123456789Z"));
+        Assertions.assertEquals(Instant.parse("2023-04-05T06:07:08.123Z").toEpochMilli(), codec.getEpochMillis());
+    }
+
+    @Test
+    public void convertsAllFractionLengths() {
+        TimestampCodec codec = new TimestampCodec(HELSINKI);
+        String[] expected = {
+                "2023-04-05T09:07:08.000000+03:00",
+                "2023-04-05T09:07:08.100000+03:00",
+                "2023-04-05T09:07:08.120000+03:00",
+                "2023-04-05T09:07:08.123000+03:00",
+                "2023-04-05T09:07:08.123400+03:00",
+                "2023-04-05T09:07:08.123450+03:00",
+                "2023-04-05T09:07:08.123456+03:00",
+                "2023-04-05T09:07:08.123456+03:00",
+                "2023-04-05T09:07:08.123456+03:00",
+                "2023-04-05T09:07:08.123456+03:00"
+        };
+        String digits = "123456789";
+        for(int i = 0; i <= 9; i++) {
+            String timestamp = "2023-04-05T06:07:08" + (i == 0 ? "" : "." + digits.substring(0, i)) + "Z";
+            Assertions.assertEquals(expected[i], codec.convert(timestamp), timestamp);
+            Assertions.assertEquals(reference(timestamp, HELSINKI), codec.convert(timestamp), timestamp);
+        }
+        Assertions.assertThrows(DateTimeParseException.class, () -> codec.convert("2023-04-05T06:07:08.1234567891Z"));
+    }
+
+    @Test
+    public void convertsOffsets() {
+        TimestampCodec codec = new TimestampCodec(HELSINKI);
+        Assertions.assertEquals("2023-04-05T06:07:08.000000+03:00", codec.convert("2023-04-05T08:37:08+05:30"));
+        Assertions.assertEquals("2023-04-05T17:07:08.500000+03:00", codec.convert("2023-04-05T06:07:08.5-08:00"));
+        Assertions.assertEquals("2023-04-05T09:07:08.000000+03:00", codec.convert("2023-04-05T06:07:08+00:00"));
+        Assertions.assertEquals("2023-04-05T09:37:08.000000+03:00", codec.convert("2023-04-05T06:07:08-00:30"));
+        // Offset moves the instant to the previous day
+        Assertions.assertEquals("2023-01-01T00:30:00.000000+02:00", codec.convert("2023-01-01T01:30:00+03:00"));
+    }
+
+    @Test
+    public void handlesDstGap() {
+        // Clocks in Helsinki jump from 03:00 to 04:00 at 2023-03-26T01:00:00Z
+        TimestampCodec codec = new TimestampCodec(HELSINKI);
+        Assertions.assertEquals("2023-03-26T02:59:59.999999+02:00", codec.convert("2023-03-26T00:59:59.999999Z"));
+        Assertions.assertEquals("2023-03-26T04:00:00.000000+03:00", codec.convert("2023-03-26T01:00:00Z"));
+        Assertions.assertEquals("2023-03-26T04:00:00.000001+03:00", codec.convert("2023-03-26T01:00:00.000001Z"));
+    }
+
+    @Test
+    public void handlesDstOverlap() {
+        // Clocks in Helsinki go back from 04:00 to 03:00 at 2023-10-29T01:00:00Z, local 03:30 happens twice
+        TimestampCodec codec = new TimestampCodec(HELSINKI);
+        Assertions.assertEquals("2023-10-29T03:30:00.000000+03:00", codec.convert("2023-10-29T00:30:00Z"));
+        Assertions.assertEquals("2023-10-29T03:30:00.000000+02:00", codec.convert("2023-10-29T01:30:00Z"));
+        // Same instants written with the local offsets
+        Assertions.assertEquals("2023-10-29T03:30:00.000000+03:00", codec.convert("2023-10-29T03:30:00+03:00"));
+        Assertions.assertEquals("2023-10-29T03:30:00.000000+02:00", codec.convert("2023-10-29T03:30:00+02:00"));
+    }
+
+    @Test
+    public void reusesSecondOnlyForSameSecond() {
+        TimestampCodec codec = new TimestampCodec(HELSINKI);
+        Assertions.assertEquals("2023-04-05T09:07:08.000001+03:00", codec.convert("2023-04-05T06:07:08.000001Z"));
+        Assertions.assertEquals("2023-04-05T09:07:08.999999+03:00", codec.convert("2023-04-05T06:07:08.999999Z"));
+        Assertions.assertEquals("2023-04-05T09:07:09.000000+03:00", codec.convert("2023-04-05T06:07:09Z"));
+        Assertions.assertEquals("2023-04-06T09:07:09.000000+03:00", codec.convert("2023-04-06T06:07:09Z"));
+    }
+
+    @Test
+    public void fallsBackToJavaTime() {
+        TimestampCodec codec = new TimestampCodec(HELSINKI);
+        // Lowercase separators, offset seconds, missing seconds and empty fractions are left to java.time
+        Assertions.assertEquals("2023-04-05T09:07:08.000000+03:00", codec.convert("2023-04-05t06:07:08z"));
+        Assertions.assertEquals("2023-04-05T09:06:38.000000+03:00", codec.convert("2023-04-05T06:07:08+00:00:30"));
+        Assertions.assertEquals("2023-04-05T09:07:00.000000+03:00", codec.convert("2023-04-05T06:07Z"));
+        Assertions.assertEquals(Instant.parse("2023-04-05T06:07:00Z").toEpochMilli(), codec.getEpochMillis());
+        Assertions.assertEquals(reference("2023-04-05T06:07:08.Z", HELSINKI), codec.convert("2023-04-05T06:07:08.Z"));
+        // Historical offsets with seconds are formatted by java.time
+        ZoneId amsterdam = ZoneId.of("Europe/Amsterdam");
+        TimestampCodec historical = new TimestampCodec(amsterdam);
+        Assertions.assertEquals(reference("1930-06-01T12:00:00.5Z", amsterdam), historical.convert("1930-06-01T12:00:00.5Z"));
+    }
+
+    @Test
+    public void rejectsInvalidTimestamps() {
+        TimestampCodec codec = new TimestampCodec(HELSINKI);
+        Assertions.assertThrows(DateTimeParseException.class, () -> codec.convert("garbage"));
+        Assertions.assertThrows(DateTimeParseException.class, () -> codec.convert("2023-02-30T06:07:08Z"));
+        Assertions.assertThrows(DateTimeParseException.class, () -> codec.convert("2023-04-05T24:07:08Z"));
+        Assertions.assertThrows(DateTimeParseException.class, () -> codec.convert("2023-04-05T06:07:08+19:00"));
+        Assertions.assertThrows(DateTimeParseException.class, () -> codec.convert("2023-04-05T06:07:08"));
+        // A failed conversion doesn't break the cached state
+        Assertions.assertEquals("2023-04-05T09:07:08.000000+03:00", codec.convert("2023-04-05T06:07:08Z"));
+    }
+
+    @Test
+    public void matchesJavaTime() {
+        Random random = new Random(5424);
+        ZoneId[] zones = {HELSINKI, ZoneId.of("America/New_York"), ZoneId.of("Australia/Lord_Howe"), ZoneId.of("Asia/Kolkata"), ZoneId.of("UTC")};
+        for(ZoneId zone : zones) {
+            TimestampCodec codec = new TimestampCodec(zone);
+            long second = Instant.parse("2023-01-01T00:00:00Z").getEpochSecond();
+            for(int i = 0; i < 20000; i++) {
+                // Mostly small steps so the cached second and date get reused, sometimes big jumps over DST changes
+                second += random.nextInt(10) == 0 ? random.nextInt(86400 * 30) : random.nextInt(3);
+                int nano = random.nextInt(1000000000);
+                int digits = random.nextInt(10);
+                ZoneOffset offset = ZoneOffset.ofTotalSeconds((random.nextInt(49) - 24) * 1800);
+                String timestamp = timestamp(second, nano, digits, random.nextBoolean() ? ZoneOffset.UTC : offset);
+                Assertions.assertEquals(reference(timestamp, zone), codec.convert(timestamp), timestamp);
+            }
+        }
+    }
+
+    private static String timestamp(long second, int nano, int digits, ZoneOffset offset) {
+        String base = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").format(Instant.ofEpochSecond(second).atOffset(offset));
+        String fraction = digits == 0 ? "" : "." + String.format("%09d", nano).substring(0, digits);
+        return base + fraction + (offset.getTotalSeconds() == 0 && digits % 2 == 0 ? "Z" : offset.getId().equals("Z") ? "+00:00" : offset.getId());
+    }
+}